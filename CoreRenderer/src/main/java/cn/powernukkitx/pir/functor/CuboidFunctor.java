@@ -0,0 +1,132 @@
+package cn.powernukkitx.pir.functor;
+
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+
+/**
+ * Intersects rays with {@link PackedCuboids} by the slab test, one test per box instead of one per triangle.<br/>
+ * A ray passes the boundary of a box at most twice, so a test gives the entry face and the exit face,
+ * with the face-local texture coordinates of the hit points. The hits are the same as the triangles of the faces give,
+ * except on the face diagonals and the box edges, where two triangles are hit at once.
+ */
+public final class CuboidFunctor implements ShapeFunctor {
+    private static final CuboidFunctor INSTANCE = new CuboidFunctor();
+
+    private CuboidFunctor() {
+    }
+
+    public static @NotNull CuboidFunctor current() {
+        return INSTANCE;
+    }
+
+    /**
+     * find the intersections of the ray with one of the packed cuboids and append them into the hit list
+     *
+     * @param cuboids     the packed cuboids
+     * @param index       the index of the cuboid
+     * @param pos         the origin of the ray
+     * @param direction   the direction of the ray
+     * @param singleSided if true, the exit face is only hit if it is double-sided, it is a back face
+     * @param idOffset    the id of a hit is idOffset + the face id, and u, v are the texture coordinates in [0, 1] on the face
+     * @param hits        the hits in front of the origin of the ray are appended into it
+     * @return true if the ray hits the cuboid
+     */
+    public boolean intersects(@NotNull PackedCuboids cuboids, int index, @NotNull Vector3f pos, @NotNull Vector3f direction,
+                              boolean singleSided, int idOffset, @NotNull HitList hits) {
+        var tNear = Float.NEGATIVE_INFINITY;
+        var tFar = Float.POSITIVE_INFINITY;
+        var nearFace = -1;
+        var farFace = -1;
+        for (int axis = 0; axis < 3; axis++) {
+            var o = pos.get(axis);
+            var d = direction.get(axis);
+            var min = cuboids.min(index, axis);
+            var max = cuboids.max(index, axis);
+            if (d == 0) {
+                if (o < min || o > max) {
+                    return false;
+                }
+                continue;
+            }
+            var tMin = (min - o) / d;
+            var tMax = (max - o) / d;
+            var minFace = MIN_FACES[axis];
+            var maxFace = MAX_FACES[axis];
+            if (d < 0) {
+                var t = tMin;
+                tMin = tMax;
+                tMax = t;
+                minFace = MAX_FACES[axis];
+                maxFace = MIN_FACES[axis];
+            }
+            if (tMin > tNear) {
+                tNear = tMin;
+                nearFace = minFace;
+            }
+            if (tMax < tFar) {
+                tFar = tMax;
+                farFace = maxFace;
+            }
+        }
+        if (tNear > tFar || tFar < 0) {
+            return false;
+        }
+        var hit = false;
+        var faceIdBase = index * PackedCuboids.FACES;
+        if (tNear >= 0 && nearFace >= 0) {
+            hit = addHit(cuboids, index, faceIdBase + nearFace, nearFace, pos, direction, tNear, idOffset, hits);
+        }
+        if (farFace >= 0 && (!singleSided || cuboids.doubleSided[faceIdBase + farFace])) {
+            hit |= addHit(cuboids, index, faceIdBase + farFace, farFace, pos, direction, tFar, idOffset, hits);
+        }
+        return hit;
+    }
+
+    /**
+     * find the intersections of the ray with all the packed cuboids and append them into the hit list
+     *
+     * @see #intersects(PackedCuboids, int, Vector3f, Vector3f, boolean, int, HitList)
+     */
+    public void intersects(@NotNull PackedCuboids cuboids, @NotNull Vector3f pos, @NotNull Vector3f direction,
+                           boolean singleSided, int idOffset, @NotNull HitList hits) {
+        for (int i = 0, len = cuboids.size(); i < len; i++) {
+            intersects(cuboids, i, pos, direction, singleSided, idOffset, hits);
+        }
+    }
+
+    /**
+     * get the UV for the texture of a face at the given texture coordinates, clamped into the texture
+     *
+     * @return the UV for the texture
+     */
+    public @NotNull Vector2i getTextureUV(@NotNull PackedCuboids cuboids, int faceId, float u, float v, @NotNull Vector2i ref) {
+        var width = cuboids.textureWidths[faceId];
+        var height = cuboids.textureHeights[faceId];
+        return ref.set(Math.min(Math.max((int) (u * width), 0), width - 1),
+                Math.min(Math.max((int) (v * height), 0), height - 1));
+    }
+
+    // the faces at the min and the max bound of each axis
+    private static final int[] MIN_FACES = {PackedCuboids.BACK, PackedCuboids.LEFT, PackedCuboids.DOWN};
+    private static final int[] MAX_FACES = {PackedCuboids.FRONT, PackedCuboids.RIGHT, PackedCuboids.UP};
+
+    private static boolean addHit(PackedCuboids cuboids, int index, int faceId, int face, Vector3f pos, Vector3f direction,
+                                  float distance, int idOffset, HitList hits) {
+        if (cuboids.textureWidths[faceId] == 0) {
+            return false;
+        }
+        hits.add(idOffset + faceId, distance,
+                faceCoordinate(cuboids, index, PackedCuboids.U_AXES[face], PackedCuboids.U_FROM_MAX[face], pos, direction, distance),
+                faceCoordinate(cuboids, index, PackedCuboids.V_AXES[face], PackedCuboids.V_FROM_MAX[face], pos, direction, distance));
+        return true;
+    }
+
+    private static float faceCoordinate(PackedCuboids cuboids, int index, int axis, boolean fromMax,
+                                        Vector3f pos, Vector3f direction, float distance) {
+        var min = cuboids.min(index, axis);
+        var max = cuboids.max(index, axis);
+        var point = pos.get(axis) + direction.get(axis) * distance;
+        return (fromMax ? max - point : point - min) / (max - min);
+    }
+}
@@ -0,0 +1,126 @@
+package cn.powernukkitx.pir.functor;
+
+import cn.powernukkitx.pir.util.SortUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of the hits of one ray, stored in primitive arrays.<br/>
+ * Each hit is a triangle id, the ray parameter (distance along the ray in units of the ray direction) and
+ * the barycentric coordinates u, v of the hit point on the triangle.<br/>
+ * Not thread-safe, each thread should keep its own list and {@link #clear()} it before each ray.
+ */
+public final class HitList {
+    private int size;
+    private int[] ids;
+    private float[] distances;
+    private float[] us;
+    private float[] vs;
+    private int[] order;
+    private int[] intScratch;
+    private float[] floatScratch;
+    private final SortUtil.IntComparator distanceComparator = (o1, o2) -> {
+        var result = Float.compare(distances[o1], distances[o2]);
+        return result != 0 ? result : Integer.compare(ids[o1], ids[o2]);
+    };
+
+    public HitList() {
+        this(16);
+    }
+
+    public HitList(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 2);
+        this.ids = new int[initialCapacity];
+        this.distances = new float[initialCapacity];
+        this.us = new float[initialCapacity];
+        this.vs = new float[initialCapacity];
+        this.order = new int[initialCapacity];
+        this.intScratch = new int[initialCapacity];
+        this.floatScratch = new float[initialCapacity];
+    }
+
+    public void add(int id, float distance, float u, float v) {
+        if (size == ids.length) {
+            var newCapacity = size << 1;
+            ids = Arrays.copyOf(ids, newCapacity);
+            distances = Arrays.copyOf(distances, newCapacity);
+            us = Arrays.copyOf(us, newCapacity);
+            vs = Arrays.copyOf(vs, newCapacity);
+            order = new int[newCapacity];
+            intScratch = new int[newCapacity];
+            floatScratch = new float[newCapacity];
+        }
+        ids[size] = id;
+        distances[size] = distance;
+        us[size] = u;
+        vs[size] = v;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of hits it holds without growing
+     */
+    public int capacity() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public float distance(int index) {
+        return distances[index];
+    }
+
+    public float u(int index) {
+        return us[index];
+    }
+
+    public float v(int index) {
+        return vs[index];
+    }
+
+    /**
+     * Sort the hits from near to far, hits with the same distance are sorted by id.
+     */
+    public void sortByDistance() {
+        if (size < 2) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        SortUtil.sort(order, 0, size, intScratch, distanceComparator);
+        permute(ids);
+        permute(distances);
+        permute(us);
+        permute(vs);
+    }
+
+    private void permute(int @NotNull [] array) {
+        System.arraycopy(array, 0, intScratch, 0, size);
+        for (int i = 0; i < size; i++) {
+            array[i] = intScratch[order[i]];
+        }
+    }
+
+    private void permute(float @NotNull [] array) {
+        System.arraycopy(array, 0, floatScratch, 0, size);
+        for (int i = 0; i < size; i++) {
+            array[i] = floatScratch[order[i]];
+        }
+    }
+}
@@ -93,7 +93,9 @@ public class JavaTriangleFunctor implements TriangleFunctor {
         var pos1 = pos1(triangle);
         var u = pos.sub(pos1, new Vector3f()).dot(e12) / e12.lengthSquared();
         var v = pos.sub(pos1, new Vector3f()).dot(e13) / e13.lengthSquared();
-        return ref.set((int) (u * textureSize.x), (int) (v * textureSize.y));
+        // hits on the far edges may give u or v slightly greater than 1
+        return ref.set(Math.min(Math.max((int) (u * textureSize.x), 0), textureSize.x - 1),
+                Math.min(Math.max((int) (v * textureSize.y), 0), textureSize.y - 1));
     }
 
     @Contract("_ -> new")
@@ -0,0 +1,22 @@
+package cn.powernukkitx.pir.functor;
+
+import org.jetbrains.annotations.NotNull;
+
+public final class JavaTriangleFunctorProvider implements TriangleFunctorProvider {
+    public static final String NAME = "java";
+
+    @Override
+    public @NotNull String name() {
+        return NAME;
+    }
+
+    @Override
+    public int priority() {
+        return 0;
+    }
+
+    @Override
+    public @NotNull TriangleFunctor create() {
+        return new JavaTriangleFunctor();
+    }
+}
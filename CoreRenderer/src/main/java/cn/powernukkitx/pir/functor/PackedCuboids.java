@@ -0,0 +1,177 @@
+package cn.powernukkitx.pir.functor;
+
+import cn.powernukkitx.pir.object.geometry.Cuboid;
+import cn.powernukkitx.pir.util.ImageUtil;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector3f;
+
+/**
+ * Axis-aligned cuboids packed into one float array per bound (structure of arrays), so a {@link CuboidFunctor}
+ * tests a ray against a whole box at once instead of against its 12 triangles.<br/>
+ * Each face of a cuboid has a face id {@code cuboidIndex * FACES + face}, faces are ordered as {@link Cuboid#textures()}:
+ * Down Right Back Left Front Up, i.e. -z, +y, -x, -y, +x, +z.
+ * A face is mapped to its texture the same way as the second triangle of the face in {@link Cuboid#triangles()},
+ * so the face textures are used as they are, without the mirrored copy of the first triangle.
+ * Faces without a texture or with a fully transparent one are never hit,
+ * as {@link cn.powernukkitx.pir.scene.FrozenScene} drops the triangles of them.<br/>
+ * The packed data is a snapshot, changing the source cuboids later does not update it.
+ */
+public final class PackedCuboids {
+    public static final int FACES = 6;
+    public static final int DOWN = 0;
+    public static final int RIGHT = 1;
+    public static final int BACK = 2;
+    public static final int LEFT = 3;
+    public static final int FRONT = 4;
+    public static final int UP = 5;
+
+    private final Cuboid[] cuboids;
+    private final Vector3f[] normalVectors;
+    final float[] minX;
+    final float[] minY;
+    final float[] minZ;
+    final float[] maxX;
+    final float[] maxY;
+    final float[] maxZ;
+    // [faceId], 0 for the faces that are never hit
+    final int[] textureWidths;
+    final int[] textureHeights;
+    // [faceId] the face is hit from inside the cuboid by single-sided tests too, see Material#doubleSided
+    final boolean[] doubleSided;
+
+    private PackedCuboids(@NotNull Cuboid @NotNull [] cuboids) {
+        this.cuboids = cuboids;
+        var size = cuboids.length;
+        minX = new float[size];
+        minY = new float[size];
+        minZ = new float[size];
+        maxX = new float[size];
+        maxY = new float[size];
+        maxZ = new float[size];
+        textureWidths = new int[size * FACES];
+        textureHeights = new int[size * FACES];
+        doubleSided = new boolean[size * FACES];
+        normalVectors = new Vector3f[size * FACES];
+        for (int i = 0; i < size; i++) {
+            var cuboid = cuboids[i];
+            var center = cuboid.center();
+            // the same vertices as Cuboid#triangles
+            var halfXLength = cuboid.xLength() / 2;
+            var halfYLength = cuboid.yLength() / 2;
+            var halfZLength = cuboid.zLength() / 2;
+            minX[i] = center.x - halfXLength;
+            minY[i] = center.y - halfYLength;
+            minZ[i] = center.z - halfZLength;
+            maxX[i] = center.x + halfXLength;
+            maxY[i] = center.y + halfYLength;
+            maxZ[i] = center.z + halfZLength;
+            for (int face = 0; face < FACES; face++) {
+                var faceId = i * FACES + face;
+                var textureSize = cuboid.textureSizes()[face];
+                if (cuboid.textures()[face] != null && textureSize != null && textureSize.x > 0 && textureSize.y > 0
+                        && ImageUtil.opacity(cuboid.textures()[face]) != ImageUtil.Opacity.TRANSPARENT
+                        && faceLength(i, U_AXES[face]) != 0 && faceLength(i, V_AXES[face]) != 0) {
+                    textureWidths[faceId] = textureSize.x;
+                    textureHeights[faceId] = textureSize.y;
+                    doubleSided[faceId] = cuboid.materials()[face].doubleSided();
+                }
+                normalVectors[faceId] = normalVector(i, face);
+            }
+        }
+    }
+
+    /**
+     * [face] the axis (0 x, 1 y, 2 z) of the texture u and v of each face, and if they are measured from the max bound.
+     * For the second triangle P1, P2, P3 of a face in {@link Cuboid#triangles()}, u runs along P1->P2 and v along P1->P3.
+     */
+    static final int[] U_AXES = {1, 0, 1, 0, 1, 0};
+    static final boolean[] U_FROM_MAX = {true, false, false, true, true, true};
+    static final int[] V_AXES = {0, 2, 2, 2, 2, 1};
+    static final boolean[] V_FROM_MAX = {true, true, true, true, true, true};
+
+    @Contract("_ -> new")
+    public static @NotNull PackedCuboids of(@NotNull Cuboid @NotNull [] cuboids) {
+        return new PackedCuboids(cuboids);
+    }
+
+    /**
+     * @return the number of cuboids
+     */
+    public int size() {
+        return cuboids.length;
+    }
+
+    /**
+     * @return the source cuboids
+     */
+    public @NotNull Cuboid @NotNull [] cuboids() {
+        return cuboids;
+    }
+
+    /**
+     * @return [faceId] the unit normal vectors of the faces, pointing outwards, the returned array should not be modified
+     */
+    public @NotNull Vector3f @NotNull [] normalVectors() {
+        return normalVectors;
+    }
+
+    /**
+     * @return the texture width of the face, 0 if the face is never hit
+     */
+    public int textureWidth(int faceId) {
+        return textureWidths[faceId];
+    }
+
+    /**
+     * @return the texture height of the face, 0 if the face is never hit
+     */
+    public int textureHeight(int faceId) {
+        return textureHeights[faceId];
+    }
+
+    /**
+     * @param padding added on each side of the boxes
+     * @return [cuboidIndex * 6] minX, minY, minZ, maxX, maxY, maxZ, as {@link cn.powernukkitx.pir.scene.BoundingVolumeHierarchy} takes
+     */
+    public float @NotNull [] bounds(float padding) {
+        var bounds = new float[cuboids.length * 6];
+        for (int i = 0; i < cuboids.length; i++) {
+            bounds[i * 6] = minX[i] - padding;
+            bounds[i * 6 + 1] = minY[i] - padding;
+            bounds[i * 6 + 2] = minZ[i] - padding;
+            bounds[i * 6 + 3] = maxX[i] + padding;
+            bounds[i * 6 + 4] = maxY[i] + padding;
+            bounds[i * 6 + 5] = maxZ[i] + padding;
+        }
+        return bounds;
+    }
+
+    float min(int index, int axis) {
+        return axis == 0 ? minX[index] : axis == 1 ? minY[index] : minZ[index];
+    }
+
+    float max(int index, int axis) {
+        return axis == 0 ? maxX[index] : axis == 1 ? maxY[index] : maxZ[index];
+    }
+
+    private float faceLength(int index, int axis) {
+        return max(index, axis) - min(index, axis);
+    }
+
+    /**
+     * The normal vector of the second triangle of the face, calculated the same way as {@link PackedTriangles#of(org.joml.Matrix3f[])}.
+     */
+    private @NotNull Vector3f normalVector(int index, int face) {
+        // P1 is at the max bound of both the u and v axes except the u axis of RIGHT and BACK, P2 = P1 along u, P3 = P1 along v
+        var p1 = new Vector3f(maxX[index], maxY[index], maxZ[index]);
+        var normalAxis = 3 - U_AXES[face] - V_AXES[face];
+        p1.setComponent(normalAxis, face == DOWN || face == BACK || face == LEFT ? min(index, normalAxis) : max(index, normalAxis));
+        if (!U_FROM_MAX[face]) {
+            p1.setComponent(U_AXES[face], min(index, U_AXES[face]));
+        }
+        var p2 = new Vector3f(p1).setComponent(U_AXES[face], U_FROM_MAX[face] ? min(index, U_AXES[face]) : max(index, U_AXES[face]));
+        var p3 = new Vector3f(p1).setComponent(V_AXES[face], min(index, V_AXES[face]));
+        return p2.sub(p1).cross(p3.sub(p1)).normalize();
+    }
+}
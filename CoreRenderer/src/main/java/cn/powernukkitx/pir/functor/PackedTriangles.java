@@ -0,0 +1,196 @@
+package cn.powernukkitx.pir.functor;
+
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix3f;
+import org.joml.Vector3f;
+
+/**
+ * Triangles packed into one float array per component (structure of arrays),
+ * so a {@link TriangleFunctor} can test a ray without reading the matrices or recomputing the edges,
+ * and a vectorized one can load the same component of several triangles at once.<br/>
+ * Each triangle is stored as its first vertex P<sub>1</sub>, its two edges P<sub>1</sub>->P<sub>2</sub>, P<sub>1</sub>->P<sub>3</sub>,
+ * its unit normal vector and the UV basis that maps barycentric coordinates to texture coordinates.
+ * The arrays are padded with degenerate triangles to a multiple of {@link #LANE_PADDING}, which never hit any ray.<br/>
+ * The packed data is a snapshot, changing the source triangles later does not update it.
+ */
+public final class PackedTriangles {
+    /**
+     * The arrays are padded to a multiple of it, enough for 512-bit float vectors.
+     */
+    public static final int LANE_PADDING = 16;
+
+    private final Matrix3f[] triangles;
+    private final Vector3f[] normalVectors;
+    private final int size;
+    final float[] p1x;
+    final float[] p1y;
+    final float[] p1z;
+    final float[] e1x;
+    final float[] e1y;
+    final float[] e1z;
+    final float[] e2x;
+    final float[] e2y;
+    final float[] e2z;
+    final float[] nx;
+    final float[] ny;
+    final float[] nz;
+    // texture u = u + v * skewU, texture v = v + u * skewV, see TriangleFunctor#getTextureUV(PackedTriangles, ...)
+    final float[] skewU;
+    final float[] skewV;
+    // the back faces are hit by single-sided tests too, see Material#doubleSided
+    final boolean[] doubleSided;
+
+    private PackedTriangles(@NotNull Matrix3f @NotNull [] triangles, @NotNull Vector3f @NotNull [] normalVectors,
+                            boolean @Nullable [] doubleSided) {
+        this.triangles = triangles;
+        this.normalVectors = normalVectors;
+        this.size = triangles.length;
+        var paddedSize = (size + LANE_PADDING - 1) / LANE_PADDING * LANE_PADDING;
+        p1x = new float[paddedSize];
+        p1y = new float[paddedSize];
+        p1z = new float[paddedSize];
+        e1x = new float[paddedSize];
+        e1y = new float[paddedSize];
+        e1z = new float[paddedSize];
+        e2x = new float[paddedSize];
+        e2y = new float[paddedSize];
+        e2z = new float[paddedSize];
+        for (int i = 0; i < size; i++) {
+            var triangle = triangles[i];
+            p1x[i] = triangle.m00;
+            p1y[i] = triangle.m01;
+            p1z[i] = triangle.m02;
+            e1x[i] = triangle.m10 - triangle.m00;
+            e1y[i] = triangle.m11 - triangle.m01;
+            e1z[i] = triangle.m12 - triangle.m02;
+            e2x[i] = triangle.m20 - triangle.m00;
+            e2y[i] = triangle.m21 - triangle.m01;
+            e2z[i] = triangle.m22 - triangle.m02;
+        }
+        nx = new float[paddedSize];
+        ny = new float[paddedSize];
+        nz = new float[paddedSize];
+        skewU = new float[paddedSize];
+        skewV = new float[paddedSize];
+        this.doubleSided = new boolean[paddedSize];
+        if (doubleSided != null) {
+            System.arraycopy(doubleSided, 0, this.doubleSided, 0, size);
+        }
+        for (int i = 0; i < size; i++) {
+            nx[i] = normalVectors[i].x;
+            ny[i] = normalVectors[i].y;
+            nz[i] = normalVectors[i].z;
+            // P - P1 = u * E1 + v * E2, projected on E1 and E2 as in JavaTriangleFunctor#getTextureUV
+            var e1e2 = e1x[i] * e2x[i] + e1y[i] * e2y[i] + e1z[i] * e2z[i];
+            var e1e1 = e1x[i] * e1x[i] + e1y[i] * e1y[i] + e1z[i] * e1z[i];
+            var e2e2 = e2x[i] * e2x[i] + e2y[i] * e2y[i] + e2z[i] * e2z[i];
+            skewU[i] = e1e1 == 0 ? 0 : e1e2 / e1e1;
+            skewV[i] = e2e2 == 0 ? 0 : e1e2 / e2e2;
+        }
+    }
+
+    /**
+     * Pack the triangles, the normal vectors are calculated the same way as {@link JavaTriangleFunctor#normalVector}.
+     */
+    @Contract("_ -> new")
+    public static @NotNull PackedTriangles of(@NotNull Matrix3f @NotNull [] triangles) {
+        var normalVectors = new Vector3f[triangles.length];
+        for (int i = 0; i < triangles.length; i++) {
+            normalVectors[i] = normalVector(triangles[i], new Vector3f());
+        }
+        return new PackedTriangles(triangles, normalVectors, null);
+    }
+
+    /**
+     * Pack the triangles with the sidedness of their materials, the normal vectors are calculated as {@link #of(Matrix3f[])} does.
+     */
+    @Contract("_ -> new")
+    public static @NotNull PackedTriangles of(@NotNull Triangle @NotNull [] triangles) {
+        var triangleMats = new Matrix3f[triangles.length];
+        var normalVectors = new Vector3f[triangles.length];
+        var doubleSided = new boolean[triangles.length];
+        for (int i = 0; i < triangles.length; i++) {
+            triangleMats[i] = triangles[i].posMat();
+            normalVectors[i] = normalVector(triangleMats[i], new Vector3f());
+            doubleSided[i] = triangles[i].material().doubleSided();
+        }
+        return new PackedTriangles(triangleMats, normalVectors, doubleSided);
+    }
+
+    /**
+     * Calculate the unit normal vector of a triangle the same way as {@link #of(Matrix3f[])} does.
+     *
+     * @return ref
+     */
+    public static @NotNull Vector3f normalVector(@NotNull Matrix3f triangle, @NotNull Vector3f ref) {
+        var tmp = new Vector3f();
+        return triangle.getColumn(1, ref).sub(triangle.getColumn(0, tmp))
+                .cross(triangle.getColumn(2, new Vector3f()).sub(tmp)).normalize();
+    }
+
+    /**
+     * Pack the triangles and their normal vectors.
+     *
+     * @param normalVectors the normal vectors of the triangles, in the same order
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull PackedTriangles of(@NotNull Matrix3f @NotNull [] triangles, @NotNull Vector3f @NotNull [] normalVectors) {
+        return of(triangles, normalVectors, new boolean[triangles.length]);
+    }
+
+    /**
+     * Pack the triangles, their normal vectors and their sidedness.
+     *
+     * @param normalVectors the normal vectors of the triangles, in the same order
+     * @param doubleSided   true for the triangles whose back faces are hit by single-sided tests too, in the same order
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull PackedTriangles of(@NotNull Matrix3f @NotNull [] triangles, @NotNull Vector3f @NotNull [] normalVectors,
+                                              boolean @NotNull [] doubleSided) {
+        if (normalVectors.length != triangles.length) {
+            throw new IllegalArgumentException("Expected " + triangles.length + " normal vectors, got " + normalVectors.length);
+        }
+        if (doubleSided.length != triangles.length) {
+            throw new IllegalArgumentException("Expected " + triangles.length + " sides, got " + doubleSided.length);
+        }
+        return new PackedTriangles(triangles, normalVectors, doubleSided);
+    }
+
+    /**
+     * @return the number of triangles, without the padding
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the length of the packed arrays, a multiple of {@link #LANE_PADDING}
+     */
+    public int paddedSize() {
+        return p1x.length;
+    }
+
+    /**
+     * @return the source triangles
+     */
+    public @NotNull Matrix3f @NotNull [] triangles() {
+        return triangles;
+    }
+
+    /**
+     * @return true if the back face of the triangle is hit by single-sided tests too
+     */
+    public boolean isDoubleSided(int index) {
+        return doubleSided[index];
+    }
+
+    /**
+     * @return the unit normal vectors of the triangles, the returned array should not be modified
+     */
+    public @NotNull Vector3f @NotNull [] normalVectors() {
+        return normalVectors;
+    }
+}
@@ -0,0 +1,58 @@
+package cn.powernukkitx.pir.functor;
+
+import cn.powernukkitx.pir.util.MathUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The Möller-Trumbore test of {@link JavaTriangleFunctor} on plain floats, testing one ray against one triangle.<br/>
+ * The distance, u and v of the hit are kept instead of the point, {@link VectorTriangleKernel} does the same operations
+ * in the same order, so both give the same hits.
+ */
+final class ScalarTriangleKernel {
+    private ScalarTriangleKernel() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param e1x  the first edge of the triangle, V2 - V1
+     * @param e2x  the second edge of the triangle, V3 - V1
+     * @param p1x  the first vertex of the triangle, V1
+     * @param ox   the origin of the ray
+     * @param dx   the direction of the ray
+     * @param id   the id written into the hit list
+     * @param hits the hit is appended into it if the ray hits the triangle in front of its origin
+     * @return true if the ray hits the triangle
+     */
+    static boolean intersects(float e1x, float e1y, float e1z, float e2x, float e2y, float e2z,
+                              float p1x, float p1y, float p1z, float ox, float oy, float oz,
+                              float dx, float dy, float dz, int id, @NotNull HitList hits) {
+        var px = dy * e2z - dz * e2y; // p = D x E2
+        var py = dz * e2x - dx * e2z;
+        var pz = dx * e2y - dy * e2x;
+        var det = e1x * px + e1y * py + e1z * pz;
+        if (det > MathUtil.EPSILON_NEG && det < MathUtil.EPSILON) {
+            return false;
+        }
+        var invDet = 1.0f / det;
+        var tx = ox - p1x; // T = O - V1
+        var ty = oy - p1y;
+        var tz = oz - p1z;
+        var u = (tx * px + ty * py + tz * pz) * invDet;
+        if (u < MathUtil.EPSILON_NEG || u > MathUtil.EPSILON_1X) {
+            return false;
+        }
+        var qx = ty * e1z - tz * e1y; // Q = T x E1
+        var qy = tz * e1x - tx * e1z;
+        var qz = tx * e1y - ty * e1x;
+        var v = (dx * qx + dy * qy + dz * qz) * invDet;
+        if (v < MathUtil.EPSILON_NEG || u + v > MathUtil.EPSILON_1X) {
+            return false;
+        }
+        var distance = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+        if (distance < 0) { // the triangle is behind the origin of the ray
+            return false;
+        }
+        hits.add(id, distance, u, v);
+        return true;
+    }
+}
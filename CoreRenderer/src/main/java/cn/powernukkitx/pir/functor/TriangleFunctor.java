@@ -1,5 +1,6 @@
 package cn.powernukkitx.pir.functor;
 
+import cn.powernukkitx.pir.util.MathUtil;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.joml.Matrix3f;
@@ -8,10 +9,11 @@ import org.joml.Vector3f;
 import org.joml.Vector4f;
 
 public interface TriangleFunctor extends ShapeFunctor {
-    TriangleFunctor CURRENT_FUNCTOR = new JavaTriangleFunctor();
-
+    /**
+     * @return the functor selected by {@link TriangleFunctors}
+     */
     static TriangleFunctor current() {
-        return CURRENT_FUNCTOR;
+        return TriangleFunctors.current();
     }
 
     /**
@@ -118,6 +120,75 @@ public interface TriangleFunctor extends ShapeFunctor {
         }
     }
 
+    /**
+     * find the intersection with given ray and append it into the hit list
+     *
+     * @param triangle  the triangle
+     * @param pos       the origin of the ray
+     * @param direction the direction of the ray
+     * @param id        the id of the triangle written into the hit list
+     * @param hits      the hit is appended into it if the ray hits the triangle in front of its origin
+     * @return true if the ray hits the triangle
+     */
+    default boolean intersects(@NotNull Matrix3f triangle, @NotNull Vector3f pos, @NotNull Vector3f direction,
+                               int id, @NotNull HitList hits) {
+        return ScalarTriangleKernel.intersects(triangle.m10 - triangle.m00, triangle.m11 - triangle.m01, triangle.m12 - triangle.m02,
+                triangle.m20 - triangle.m00, triangle.m21 - triangle.m01, triangle.m22 - triangle.m02,
+                triangle.m00, triangle.m01, triangle.m02,
+                pos.x, pos.y, pos.z, direction.x, direction.y, direction.z, id, hits);
+    }
+
+    /**
+     * find the intersections of one ray with all the triangles and append them into the hit list
+     *
+     * @param pos       the origin of the ray
+     * @param direction the direction of the ray
+     * @param hits      the hits are appended into it, the id of a hit is the index of the triangle
+     */
+    default void intersects(@NotNull Matrix3f @NotNull [] triangle,
+                            @NotNull Vector3f pos,
+                            @NotNull Vector3f direction,
+                            @NotNull HitList hits) {
+        for (int i = 0; i < triangle.length; i++) {
+            intersects(triangle[i], pos, direction, i, hits);
+        }
+    }
+
+    /**
+     * find the intersection of the ray with one of the packed triangles and append it into the hit list
+     *
+     * @param triangles the packed triangles
+     * @param index     the index of the triangle, also the id written into the hit list
+     * @param pos       the origin of the ray
+     * @param direction the direction of the ray
+     * @param hits      the hit is appended into it if the ray hits the triangle in front of its origin
+     * @return true if the ray hits the triangle
+     */
+    default boolean intersects(@NotNull PackedTriangles triangles, int index, @NotNull Vector3f pos,
+                               @NotNull Vector3f direction, @NotNull HitList hits) {
+        return ScalarTriangleKernel.intersects(triangles.e1x[index], triangles.e1y[index], triangles.e1z[index],
+                triangles.e2x[index], triangles.e2y[index], triangles.e2z[index],
+                triangles.p1x[index], triangles.p1y[index], triangles.p1z[index],
+                pos.x, pos.y, pos.z, direction.x, direction.y, direction.z, index, hits);
+    }
+
+    /**
+     * find the intersections of one ray with all the packed triangles and append them into the hit list
+     *
+     * @param triangles the packed triangles
+     * @param pos       the origin of the ray
+     * @param direction the direction of the ray
+     * @param hits      the hits are appended into it, the id of a hit is the index of the triangle
+     */
+    default void intersects(@NotNull PackedTriangles triangles,
+                            @NotNull Vector3f pos,
+                            @NotNull Vector3f direction,
+                            @NotNull HitList hits) {
+        for (int i = 0, len = triangles.size(); i < len; i++) {
+            intersects(triangles, i, pos, direction, hits);
+        }
+    }
+
     /**
      * find the intersection pos with given ray
      *
@@ -185,6 +256,139 @@ public interface TriangleFunctor extends ShapeFunctor {
         }
     }
 
+    /**
+     * find the intersection with given ray and append it into the hit list, back faces are ignored
+     *
+     * @param triangle  the triangle
+     * @param pos       the origin of the ray
+     * @param direction the direction of the ray
+     * @param id        the id of the triangle written into the hit list
+     * @param hits      the hit is appended into it if the ray hits the front face of the triangle in front of its origin
+     * @return true if the ray hits the triangle
+     */
+    default boolean intersectsSingleSided(@NotNull Matrix3f triangle, @NotNull Vector3f normalVector, @NotNull Vector3f pos,
+                                          @NotNull Vector3f direction, int id, @NotNull HitList hits) {
+        if (normalVector.dot(direction) > MathUtil.EPSILON_NEG) {
+            return false;
+        }
+        return intersects(triangle, pos, direction, id, hits);
+    }
+
+    /**
+     * find the intersections of one ray with all the triangles and append them into the hit list, back faces are ignored
+     *
+     * @param pos       the origin of the ray
+     * @param direction the direction of the ray
+     * @param hits      the hits are appended into it, the id of a hit is the index of the triangle
+     */
+    default void intersectsSingleSided(@NotNull Matrix3f @NotNull [] triangle,
+                                       @NotNull Vector3f @NotNull [] normalVector,
+                                       @NotNull Vector3f pos,
+                                       @NotNull Vector3f direction,
+                                       @NotNull HitList hits) {
+        for (int i = 0; i < triangle.length; i++) {
+            intersectsSingleSided(triangle[i], normalVector[i], pos, direction, i, hits);
+        }
+    }
+
+    /**
+     * find the intersections of one ray with all the packed triangles and append them into the hit list, back faces are ignored
+     * unless the triangles are double-sided
+     *
+     * @param triangles the packed triangles, packed with their normal vectors
+     * @param pos       the origin of the ray
+     * @param direction the direction of the ray
+     * @param hits      the hits are appended into it, the id of a hit is the index of the triangle
+     */
+    default void intersectsSingleSided(@NotNull PackedTriangles triangles,
+                                       @NotNull Vector3f pos,
+                                       @NotNull Vector3f direction,
+                                       @NotNull HitList hits) {
+        for (int i = 0, len = triangles.size(); i < len; i++) {
+            intersectsSingleSided(triangles, i, pos, direction, hits);
+        }
+    }
+
+    /**
+     * find the intersection of the ray with one of the packed triangles and append it into the hit list, back faces are ignored
+     * unless the triangle is double-sided
+     *
+     * @param triangles the packed triangles
+     * @param index     the index of the triangle, also the id written into the hit list
+     * @param pos       the origin of the ray
+     * @param direction the direction of the ray
+     * @param hits      the hit is appended into it if the ray hits the front face, or any face of a double-sided triangle, in front of its origin
+     * @return true if the ray hits the triangle
+     */
+    default boolean intersectsSingleSided(@NotNull PackedTriangles triangles, int index, @NotNull Vector3f pos,
+                                          @NotNull Vector3f direction, @NotNull HitList hits) {
+        // the same order as Vector3f.dot
+        if (!triangles.doubleSided[index]
+                && triangles.nx[index] * direction.x + (triangles.ny[index] * direction.y + triangles.nz[index] * direction.z) > MathUtil.EPSILON_NEG) {
+            return false;
+        }
+        return intersects(triangles, index, pos, direction, hits);
+    }
+
+    /**
+     * get the position on the triangle at the given barycentric coordinates
+     *
+     * @return P<sub>1</sub> + u * P<sub>1</sub>->P<sub>2</sub> + v * P<sub>1</sub>->P<sub>3</sub>
+     */
+    @Contract("_, _, _, _ -> param4")
+    default @NotNull Vector3f pointAt(@NotNull Matrix3f triangle, float u, float v, @NotNull Vector3f ref) {
+        var w = 1 - u - v;
+        return ref.set(triangle.m00 * w + triangle.m10 * u + triangle.m20 * v,
+                triangle.m01 * w + triangle.m11 * u + triangle.m21 * v,
+                triangle.m02 * w + triangle.m12 * u + triangle.m22 * v);
+    }
+
+    /**
+     * get the UV for the texture on the triangle at the given barycentric coordinates, e.g. of a hit in a {@link HitList},
+     * the same as {@link #getTextureUV(PackedTriangles, int, float, float, Vector2i, Vector2i)} without packing the triangle
+     *
+     * @param triangle    the triangle
+     * @param textureSize the size of the texture
+     * @return the UV for the texture
+     */
+    @Contract("_, _, _, _, _ -> param5")
+    default @NotNull Vector2i getTextureUV(@NotNull Matrix3f triangle, float u, float v,
+                                           @NotNull Vector2i textureSize, @NotNull Vector2i ref) {
+        var e1x = triangle.m10 - triangle.m00;
+        var e1y = triangle.m11 - triangle.m01;
+        var e1z = triangle.m12 - triangle.m02;
+        var e2x = triangle.m20 - triangle.m00;
+        var e2y = triangle.m21 - triangle.m01;
+        var e2z = triangle.m22 - triangle.m02;
+        // the same skews as PackedTriangles
+        var e1e2 = e1x * e2x + e1y * e2y + e1z * e2z;
+        var e1e1 = e1x * e1x + e1y * e1y + e1z * e1z;
+        var e2e2 = e2x * e2x + e2y * e2y + e2z * e2z;
+        var textureU = u + v * (e1e1 == 0 ? 0 : e1e2 / e1e1);
+        var textureV = v + u * (e2e2 == 0 ? 0 : e1e2 / e2e2);
+        return ref.set(Math.min(Math.max((int) (textureU * textureSize.x), 0), textureSize.x - 1),
+                Math.min(Math.max((int) (textureV * textureSize.y), 0), textureSize.y - 1));
+    }
+
+    /**
+     * get the UV for the texture on one of the packed triangles at the given barycentric coordinates,
+     * the same as {@link #getTextureUV(Matrix3f, Vector3f, Vector2i, Vector2i)} at {@link #pointAt} without reconstructing the point
+     *
+     * @param triangles   the packed triangles
+     * @param index       the index of the triangle
+     * @param textureSize the size of the texture
+     * @return the UV for the texture
+     */
+    @Contract("_, _, _, _, _, _ -> param6")
+    default @NotNull Vector2i getTextureUV(@NotNull PackedTriangles triangles, int index, float u, float v,
+                                           @NotNull Vector2i textureSize, @NotNull Vector2i ref) {
+        var textureU = u + v * triangles.skewU[index];
+        var textureV = v + u * triangles.skewV[index];
+        // hits on the far edges may give u or v slightly greater than 1
+        return ref.set(Math.min(Math.max((int) (textureU * textureSize.x), 0), textureSize.x - 1),
+                Math.min(Math.max((int) (textureV * textureSize.y), 0), textureSize.y - 1));
+    }
+
     /**
      * calculate the normal vector
      *
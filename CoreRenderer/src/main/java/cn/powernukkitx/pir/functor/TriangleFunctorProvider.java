@@ -0,0 +1,30 @@
+package cn.powernukkitx.pir.functor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A service provider of a {@link TriangleFunctor}, discovered with {@link java.util.ServiceLoader}.<br/>
+ * Register implementations in META-INF/services/cn.powernukkitx.pir.functor.TriangleFunctorProvider.
+ * The available provider with the highest priority is used unless another one is chosen by name,
+ * see {@link TriangleFunctors}.
+ */
+public interface TriangleFunctorProvider {
+    /**
+     * @return the unique name used to choose this provider
+     */
+    @NotNull String name();
+
+    /**
+     * @return the priority, providers with higher priority are preferred
+     */
+    int priority();
+
+    /**
+     * @return false if the functor cannot work in the current runtime
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    @NotNull TriangleFunctor create();
+}
@@ -0,0 +1,118 @@
+package cn.powernukkitx.pir.functor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Selects the {@link TriangleFunctor} returned by {@link TriangleFunctor#current()}.<br/>
+ * The functor is chosen once, from the {@link TriangleFunctorProvider}s found by {@link ServiceLoader}:
+ * the provider named by the system property {@value #PROPERTY} if set, otherwise the available provider with the highest priority.
+ * Callers that need another functor for one render should {@link #create(String)} it and pass it to their workers
+ * instead of switching the process-wide one with {@link #use(String)}.
+ */
+public final class TriangleFunctors {
+    /**
+     * The system property to choose a provider by name.
+     */
+    public static final String PROPERTY = "pir.triangleFunctor";
+    private static final System.Logger LOGGER = System.getLogger(TriangleFunctors.class.getName());
+    private static volatile TriangleFunctor current = selectDefault();
+
+    private TriangleFunctors() {
+        throw new UnsupportedOperationException();
+    }
+
+    static @NotNull TriangleFunctor current() {
+        return current;
+    }
+
+    /**
+     * @return the available providers, from the highest priority to the lowest
+     */
+    public static @NotNull List<TriangleFunctorProvider> providers() {
+        var providers = new ArrayList<TriangleFunctorProvider>();
+        var iterator = ServiceLoader.load(TriangleFunctorProvider.class, TriangleFunctorProvider.class.getClassLoader()).iterator();
+        while (iterator.hasNext()) {
+            try {
+                var provider = iterator.next();
+                if (provider.isAvailable()) {
+                    providers.add(provider);
+                }
+            } catch (ServiceConfigurationError e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Skipping broken triangle functor provider", e);
+            }
+        }
+        providers.sort(Comparator.comparingInt(TriangleFunctorProvider::priority).reversed());
+        return providers;
+    }
+
+    /**
+     * Create a functor without changing the current one.
+     *
+     * @param name the name of the provider, or null for the default one, chosen as at startup
+     * @return the new functor
+     * @throws IllegalArgumentException if no available provider has the name
+     */
+    public static @NotNull TriangleFunctor create(@Nullable String name) {
+        return name == null ? selectDefault() : select(name);
+    }
+
+    /**
+     * Switch the current functor of the process, workers created afterwards use the new one.
+     *
+     * @param name the name of the provider, or null to restore the default one, chosen as at startup
+     * @return the new current functor
+     * @throws IllegalArgumentException if no available provider has the name
+     */
+    public static @NotNull TriangleFunctor use(@Nullable String name) {
+        var functor = create(name);
+        current = functor;
+        return functor;
+    }
+
+    private static @NotNull TriangleFunctor selectDefault() {
+        var name = System.getProperty(PROPERTY);
+        if (name != null && !name.isBlank()) {
+            try {
+                return select(name);
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(System.Logger.Level.WARNING, e.getMessage() + ", falling back to the default one");
+            }
+        }
+        return select(null);
+    }
+
+    private static @NotNull TriangleFunctor select(@Nullable String name) {
+        var providers = providers();
+        TriangleFunctorProvider selected = null;
+        if (name == null) {
+            if (!providers.isEmpty()) {
+                selected = providers.get(0);
+            }
+        } else {
+            for (var provider : providers) {
+                if (provider.name().equals(name)) {
+                    selected = provider;
+                    break;
+                }
+            }
+            if (selected == null) {
+                throw new IllegalArgumentException("No available triangle functor named " + name);
+            }
+        }
+        if (selected == null) {
+            // no provider registered at all, e.g. the service files were dropped when shading
+            LOGGER.log(System.Logger.Level.INFO, "Using triangle functor " + JavaTriangleFunctor.class.getName());
+            return new JavaTriangleFunctor();
+        }
+        var functor = selected.create();
+        LOGGER.log(System.Logger.Level.INFO, "Using triangle functor " + selected.name() + " (" + functor.getClass().getName() + ")");
+        return functor;
+    }
+}
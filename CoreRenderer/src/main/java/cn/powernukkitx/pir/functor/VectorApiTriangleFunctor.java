@@ -0,0 +1,42 @@
+package cn.powernukkitx.pir.functor;
+
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector3f;
+
+/**
+ * A TriangleFunctor that tests one ray against 8 or 16 {@link PackedTriangles} at once with the Java Vector API.<br/>
+ * The Vector API lives in the incubator module jdk.incubator.vector, which has to be added with
+ * {@code --add-modules jdk.incubator.vector}. Without it, this functor works the same as {@link JavaTriangleFunctor}.<br/>
+ * Only the packed overloads are vectorized, the others are inherited from {@link JavaTriangleFunctor}.
+ */
+public class VectorApiTriangleFunctor extends JavaTriangleFunctor {
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && VectorTriangleKernel.isSupported();
+
+    /**
+     * @return true if the Vector API is available, otherwise the scalar fallback is used
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    @Override
+    public void intersects(@NotNull PackedTriangles triangles, @NotNull Vector3f pos, @NotNull Vector3f direction,
+                           @NotNull HitList hits) {
+        if (VECTORIZED) {
+            VectorTriangleKernel.intersects(triangles, pos, direction, false, hits);
+        } else {
+            super.intersects(triangles, pos, direction, hits);
+        }
+    }
+
+    @Override
+    public void intersectsSingleSided(@NotNull PackedTriangles triangles, @NotNull Vector3f pos, @NotNull Vector3f direction,
+                                      @NotNull HitList hits) {
+        if (VECTORIZED) {
+            VectorTriangleKernel.intersects(triangles, pos, direction, true, hits);
+        } else {
+            super.intersectsSingleSided(triangles, pos, direction, hits);
+        }
+    }
+}
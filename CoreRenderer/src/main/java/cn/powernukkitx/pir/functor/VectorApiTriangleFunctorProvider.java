@@ -0,0 +1,30 @@
+package cn.powernukkitx.pir.functor;
+
+import org.jetbrains.annotations.NotNull;
+
+public final class VectorApiTriangleFunctorProvider implements TriangleFunctorProvider {
+    public static final String NAME = "vector-api";
+
+    @Override
+    public @NotNull String name() {
+        return NAME;
+    }
+
+    @Override
+    public int priority() {
+        return 100;
+    }
+
+    /**
+     * @return true only if the Vector API is present, without it the functor is only a slower JavaTriangleFunctor
+     */
+    @Override
+    public boolean isAvailable() {
+        return VectorApiTriangleFunctor.isVectorized();
+    }
+
+    @Override
+    public @NotNull TriangleFunctor create() {
+        return new VectorApiTriangleFunctor();
+    }
+}
@@ -0,0 +1,97 @@
+package cn.powernukkitx.pir.functor;
+
+import cn.powernukkitx.pir.util.MathUtil;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector3f;
+
+/**
+ * The Möller-Trumbore kernel of {@link VectorApiTriangleFunctor}, testing one ray against a vector of triangles at once.<br/>
+ * It links against jdk.incubator.vector, so it must only be loaded when the module is present.<br/>
+ * The operations are done in the same order as {@link ScalarTriangleKernel#intersects},
+ * so both give the same hits with the same distances and barycentric coordinates.
+ */
+final class VectorTriangleKernel {
+    static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorTriangleKernel() {
+        throw new UnsupportedOperationException();
+    }
+
+    static boolean isSupported() {
+        // vectors wider than the padding cannot load the packed arrays without a tail loop
+        return SPECIES.length() > 1 && PackedTriangles.LANE_PADDING % SPECIES.length() == 0;
+    }
+
+    static void intersects(@NotNull PackedTriangles triangles, @NotNull Vector3f pos, @NotNull Vector3f direction,
+                           boolean singleSided, @NotNull HitList hits) {
+        var dx = FloatVector.broadcast(SPECIES, direction.x);
+        var dy = FloatVector.broadcast(SPECIES, direction.y);
+        var dz = FloatVector.broadcast(SPECIES, direction.z);
+        var ox = FloatVector.broadcast(SPECIES, pos.x);
+        var oy = FloatVector.broadcast(SPECIES, pos.y);
+        var oz = FloatVector.broadcast(SPECIES, pos.z);
+        var one = FloatVector.broadcast(SPECIES, 1.0f);
+        for (int i = 0, len = triangles.paddedSize(), step = SPECIES.length(); i < len; i += step) {
+            VectorMask<Float> accepted;
+            if (singleSided) {
+                // the same order as Vector3f.dot
+                var nx = FloatVector.fromArray(SPECIES, triangles.nx, i);
+                var ny = FloatVector.fromArray(SPECIES, triangles.ny, i);
+                var nz = FloatVector.fromArray(SPECIES, triangles.nz, i);
+                var facing = nx.mul(dx).add(ny.mul(dy).add(nz.mul(dz)));
+                accepted = facing.compare(VectorOperators.GT, MathUtil.EPSILON_NEG).not()
+                        .or(VectorMask.fromArray(SPECIES, triangles.doubleSided, i));
+                if (!accepted.anyTrue()) {
+                    continue;
+                }
+            } else {
+                accepted = SPECIES.maskAll(true);
+            }
+            var e1x = FloatVector.fromArray(SPECIES, triangles.e1x, i);
+            var e1y = FloatVector.fromArray(SPECIES, triangles.e1y, i);
+            var e1z = FloatVector.fromArray(SPECIES, triangles.e1z, i);
+            var e2x = FloatVector.fromArray(SPECIES, triangles.e2x, i);
+            var e2y = FloatVector.fromArray(SPECIES, triangles.e2y, i);
+            var e2z = FloatVector.fromArray(SPECIES, triangles.e2z, i);
+            var px = dy.mul(e2z).sub(dz.mul(e2y)); // p = D x E2
+            var py = dz.mul(e2x).sub(dx.mul(e2z));
+            var pz = dx.mul(e2y).sub(dy.mul(e2x));
+            var det = e1x.mul(px).add(e1y.mul(py)).add(e1z.mul(pz));
+            accepted = accepted.andNot(det.compare(VectorOperators.GT, MathUtil.EPSILON_NEG)
+                    .and(det.compare(VectorOperators.LT, MathUtil.EPSILON)));
+            if (!accepted.anyTrue()) {
+                continue;
+            }
+            var invDet = one.div(det);
+            var tx = ox.sub(FloatVector.fromArray(SPECIES, triangles.p1x, i)); // T = O - V1
+            var ty = oy.sub(FloatVector.fromArray(SPECIES, triangles.p1y, i));
+            var tz = oz.sub(FloatVector.fromArray(SPECIES, triangles.p1z, i));
+            var u = tx.mul(px).add(ty.mul(py)).add(tz.mul(pz)).mul(invDet);
+            accepted = accepted.andNot(u.compare(VectorOperators.LT, MathUtil.EPSILON_NEG)
+                    .or(u.compare(VectorOperators.GT, MathUtil.EPSILON_1X)));
+            if (!accepted.anyTrue()) {
+                continue;
+            }
+            var qx = ty.mul(e1z).sub(tz.mul(e1y)); // Q = T x E1
+            var qy = tz.mul(e1x).sub(tx.mul(e1z));
+            var qz = tx.mul(e1y).sub(ty.mul(e1x));
+            var v = dx.mul(qx).add(dy.mul(qy)).add(dz.mul(qz)).mul(invDet);
+            accepted = accepted.andNot(v.compare(VectorOperators.LT, MathUtil.EPSILON_NEG)
+                    .or(u.add(v).compare(VectorOperators.GT, MathUtil.EPSILON_1X)));
+            if (!accepted.anyTrue()) {
+                continue;
+            }
+            var distance = e2x.mul(qx).add(e2y.mul(qy)).add(e2z.mul(qz)).mul(invDet);
+            accepted = accepted.andNot(distance.compare(VectorOperators.LT, 0));
+            // padding triangles are degenerate and never accepted, so every accepted lane is a real triangle
+            for (var bits = accepted.toLong(); bits != 0; bits &= bits - 1) {
+                var lane = Long.numberOfTrailingZeros(bits);
+                hits.add(i + lane, distance.lane(lane), u.lane(lane), v.lane(lane));
+            }
+        }
+    }
+}
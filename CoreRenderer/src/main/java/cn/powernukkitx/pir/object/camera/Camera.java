@@ -5,6 +5,7 @@ import cn.powernukkitx.pir.object.SceneObject;
 import cn.powernukkitx.pir.scene.Scene;
 import cn.powernukkitx.pir.worker.RayTraceWorker;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3f;
 
 import java.awt.image.RenderedImage;
@@ -47,6 +48,23 @@ public interface Camera extends SceneObject {
         return (float) pixelWidth() / pixelHeight();
     }
 
+    /**
+     * Test whether any ray of this camera may pass through an axis-aligned box, so the geometry in it can be culled if not.
+     * Cameras that do not know their view volume never cull anything.
+     *
+     * @return false only if no ray of this camera passes through the box
+     */
+    default boolean isBoxVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        return true;
+    }
+
+    /**
+     * @return The rays of this camera as a grid generated on the fly, or null if they are not a grid
+     */
+    default @Nullable RayGrid rayGrid() {
+        return null;
+    }
+
     /**
      * Render the scene using the given RayTraceWorker with this camera
      * @param scene The scene to render
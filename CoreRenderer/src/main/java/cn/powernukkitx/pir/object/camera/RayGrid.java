@@ -0,0 +1,52 @@
+package cn.powernukkitx.pir.object.camera;
+
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector3f;
+
+/**
+ * The rays of an orthogonal camera, generated on the fly instead of being stored per pixel.<br/>
+ * The ray of pixel (x, y) starts at {@code start + up * y + right * x} and goes along the shared direction,
+ * y grows upwards from the bottom row of the image.
+ *
+ * @param start     the position of the ray of pixel (0, 0)
+ * @param right     the step between the positions of two neighbouring pixels in a row
+ * @param up        the step between the positions of two neighbouring pixels in a column
+ * @param direction the direction of all the rays
+ * @param width     the number of pixels in a row
+ * @param height    the number of pixels in a column
+ */
+public record RayGrid(
+        @NotNull Vector3f start,
+        @NotNull Vector3f right,
+        @NotNull Vector3f up,
+        @NotNull Vector3f direction,
+        int width,
+        int height
+) {
+    /**
+     * @return ref, set to the position of the ray of pixel (x, y)
+     */
+    public @NotNull Vector3f position(int x, int y, @NotNull Vector3f ref) {
+        // (start + up * y) + right * x, in this order so the positions do not depend on how the grid is split
+        return ref.set(start.x + up.x * y + right.x * x, start.y + up.y * y + right.y * x, start.z + up.z * y + right.z * x);
+    }
+
+    /**
+     * Generate the rays of a rectangle of pixels, row by row from the bottom.
+     * The vectors already in positions are reused, so the arrays can be filled again for the next rectangle.
+     *
+     * @param positions  filled with the ray positions, at least width * height long
+     * @param directions filled with the shared direction, at least width * height long
+     */
+    public void fill(int startX, int startY, int width, int height,
+                     Vector3f @NotNull [] positions, Vector3f @NotNull [] directions) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                var index = y * width + x;
+                var position = positions[index];
+                positions[index] = position(startX + x, startY + y, position == null ? new Vector3f() : position);
+                directions[index] = direction;
+            }
+        }
+    }
+}
@@ -1,16 +1,38 @@
 package cn.powernukkitx.pir.object.camera;
 
+import cn.powernukkitx.pir.scene.FrozenScene;
 import cn.powernukkitx.pir.scene.Scene;
 import cn.powernukkitx.pir.util.ColorUtil;
+import cn.powernukkitx.pir.worker.DeferredRayTraceWorker;
+import cn.powernukkitx.pir.worker.RasterizingWorker;
 import cn.powernukkitx.pir.worker.RayTraceWorker;
+import cn.powernukkitx.pir.worker.RenderContext;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix3f;
 import org.joml.Vector3f;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.image.RenderedImage;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public final class SimpleOrthogonalCamera implements OrthogonalCamera {
+    public static final int DEFAULT_TILE_SIZE = 32;
+    /**
+     * Untiled renders trace this many rows at once, so only the rays of one band are ever generated.
+     */
+    private static final int BAND_HEIGHT = 32;
+    /**
+     * The view volume is padded by half a pixel in {@link #isBoxVisible}, so rounding never culls a box that a ray touches.
+     */
+    private static final float CULLING_PADDING = 0.5f;
+
     private final @NotNull Vector3f position;
     private final @NotNull Vector3f direction;
     private final int pixelWidth;
@@ -18,8 +40,10 @@ public final class SimpleOrthogonalCamera implements OrthogonalCamera {
     private final float sceneWidth;
     private final float sceneHeight;
     private final @NotNull Vector3f up;
-    private final @NotNull Vector3f[] rayPositions;
-    private final @NotNull Vector3f[] rayDirections;
+    private final @NotNull RayGrid rayGrid;
+    // maps a point to (y, x, t) of the ray grid: point = ray position (x, y) + direction * t, null if the grid is degenerate
+    private final @Nullable Matrix3f gridInverse;
+    private final @NotNull Vector3f gridStart;
 
     public SimpleOrthogonalCamera(
             @NotNull Vector3f position,
@@ -38,51 +62,245 @@ public final class SimpleOrthogonalCamera implements OrthogonalCamera {
         this.up = up;
         {
             var tmp3f = new Vector3f();
-            var tmpPositions = new Vector3f[pixelWidth * pixelHeight];
-            var tmpDirections = new Vector3f[pixelWidth * pixelHeight];
             var right = right();
             var dUp = up.mul(sceneHeight / pixelHeight, new Vector3f());
             var dRight = right.mul(sceneWidth / pixelWidth, new Vector3f());
             var startPos = position
                     .sub(dUp.mul(pixelHeight, tmp3f).mul(0.5f))
                     .sub(dRight.mul(pixelWidth, tmp3f).mul(0.5f));
-            for (int y = 0; y < pixelHeight; y++) {
-                for (int x = 0; x < pixelWidth; x++) {
-                    var index = xy2index(x, y);
-                    tmpPositions[index] = startPos.add(dUp.mul(y, tmp3f), new Vector3f()).add(dRight.mul(x, tmp3f), new Vector3f());
-                    tmpDirections[index] = direction;
-                }
-            }
-            this.rayPositions = tmpPositions;
-            this.rayDirections = tmpDirections;
+            // the rays are generated per band or tile when rendering
+            this.rayGrid = new RayGrid(new Vector3f(startPos), dRight, dUp, direction, pixelWidth, pixelHeight);
+            var grid = new Matrix3f(dUp, dRight, direction);
+            this.gridInverse = grid.determinant() == 0 ? null : grid.invert();
+            this.gridStart = rayGrid.start();
         }
     }
 
+    @Override
+    public @NotNull RayGrid rayGrid() {
+        return rayGrid;
+    }
+
     @Override
     public Vector3f right() {
         return direction.cross(up, new Vector3f()).normalize();
     }
 
-    private int xy2index(int x, int y) {
-        return y * pixelWidth + x;
+    /**
+     * The box is projected onto the ray grid, it is visible if the projection overlaps the grid
+     * and part of it is in front of the ray positions. The grid is padded by half a pixel.
+     */
+    @Override
+    public boolean isBoxVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (gridInverse == null) {
+            return true;
+        }
+        float minRow = Float.POSITIVE_INFINITY, maxRow = Float.NEGATIVE_INFINITY;
+        float minColumn = Float.POSITIVE_INFINITY, maxColumn = Float.NEGATIVE_INFINITY;
+        var maxT = Float.NEGATIVE_INFINITY;
+        var corner = new Vector3f();
+        for (int i = 0; i < 8; i++) {
+            corner.set((i & 1) == 0 ? minX : maxX, (i & 2) == 0 ? minY : maxY, (i & 4) == 0 ? minZ : maxZ)
+                    .sub(gridStart).mul(gridInverse);
+            minRow = Math.min(minRow, corner.x);
+            maxRow = Math.max(maxRow, corner.x);
+            minColumn = Math.min(minColumn, corner.y);
+            maxColumn = Math.max(maxColumn, corner.y);
+            maxT = Math.max(maxT, corner.z);
+        }
+        return maxRow >= -CULLING_PADDING && minRow <= pixelHeight - 1 + CULLING_PADDING
+                && maxColumn >= -CULLING_PADDING && minColumn <= pixelWidth - 1 + CULLING_PADDING
+                && maxT >= -CULLING_PADDING;
     }
 
     @Override
     public @NotNull RenderedImage render(@NotNull Scene scene, @NotNull RayTraceWorker rayTraceWorker) {
-        var colors = scene.rayTrace(rayPositions, rayDirections, rayTraceWorker);
+        try (var context = new RenderContext()) {
+            return render(scene, rayTraceWorker, context);
+        }
+    }
+
+    /**
+     * Render the scene with the scratch buffers of the given context, the context is trimmed to its byte cap afterwards.
+     * The image is traced in bands of rows, whose rays are generated from {@link #rayGrid()} into the same arrays.
+     */
+    public @NotNull RenderedImage render(@NotNull Scene scene, @NotNull RayTraceWorker rayTraceWorker, @NotNull RenderContext context) {
         var image = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB);
-        for (int y = 0; y < pixelHeight; y++) {
-            for (int x = 0; x < pixelWidth; x++) {
-                // In Java, images are processed in a left-handed format,
-                // but in PIR, rendering is processed in a right-handed format.
-                // Here requires conversion
-                var color = colors[xy2index(x, y)];
-                image.setRGB(x, pixelHeight - y - 1, ColorUtil.toInt(color));
+        try {
+            var bandHeight = Math.min(BAND_HEIGHT, pixelHeight);
+            var positions = new Vector3f[pixelWidth * bandHeight];
+            var directions = new Vector3f[pixelWidth * bandHeight];
+            for (int startY = 0; startY < pixelHeight; startY += bandHeight) {
+                var height = Math.min(bandHeight, pixelHeight - startY);
+                if (height < bandHeight) {
+                    // the workers trace all the rays of the arrays given
+                    positions = Arrays.copyOf(positions, pixelWidth * height);
+                    directions = Arrays.copyOf(directions, pixelWidth * height);
+                }
+                rayGrid.fill(0, startY, pixelWidth, height, positions, directions);
+                rayTraceInto(context, scene, rayTraceWorker, image, positions, directions, 0, startY, pixelWidth, height);
             }
+        } finally {
+            context.trim();
         }
         return image;
     }
 
+    /**
+     * Trace a grid of rays straight into the pixels of the image, the rays are rasterized if the worker supports it.
+     */
+    private void rayTraceInto(@NotNull RenderContext context, @NotNull Scene scene, @NotNull RayTraceWorker rayTraceWorker,
+                              @NotNull BufferedImage image,
+                              @NotNull Vector3f @NotNull [] positions, @NotNull Vector3f @NotNull [] directions,
+                              int startX, int startY, int width, int height) {
+        var pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        // In Java, images are processed in a left-handed format,
+        // but in PIR, rendering is processed in a right-handed format.
+        // Here requires conversion, the rows are written bottom-up
+        var offset = (pixelHeight - startY - 1) * pixelWidth + startX;
+        var scanline = -pixelWidth;
+        if (scene instanceof FrozenScene frozenScene) {
+            if (rayTraceWorker instanceof RasterizingWorker rasterizingWorker) {
+                rasterizingWorker.rayTraceGridInto(context, pixels, offset, scanline, positions, directions, width, height, frozenScene);
+            } else if (rayTraceWorker instanceof DeferredRayTraceWorker deferredWorker) {
+                // the G-buffer of the window is looked up by the grid instead of the rays
+                deferredWorker.rayTraceGridInto(context, pixels, offset, scanline, rayGrid, startX, startY, width, height,
+                        positions, directions, frozenScene);
+            } else {
+                rayTraceWorker.rayTraceInto(context, pixels, offset, scanline, width, positions, directions, frozenScene);
+            }
+            return;
+        }
+        var colors = scene.rayTrace(positions, directions, rayTraceWorker);
+        for (int i = 0; i < colors.length; i++) {
+            pixels[offset + i / width * scanline + i % width] = ColorUtil.toInt(colors[i]);
+        }
+    }
+
+    /**
+     * Render the scene in square tiles in parallel using the common fork/join pool.
+     *
+     * @see #render(Scene, RayTraceWorker, int, ForkJoinPool)
+     */
+    public @NotNull RenderedImage render(@NotNull Scene scene, @NotNull RayTraceWorker rayTraceWorker, int tileSize) {
+        return render(scene, rayTraceWorker, tileSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Render the scene in square tiles in parallel, the render contexts of the tiles are dropped afterwards.
+     *
+     * @see #render(Scene, RayTraceWorker, int, ForkJoinPool, Queue)
+     */
+    public @NotNull RenderedImage render(@NotNull Scene scene, @NotNull RayTraceWorker rayTraceWorker, int tileSize,
+                                         @NotNull ForkJoinPool pool) {
+        return render(scene, rayTraceWorker, tileSize, pool, new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * Render the scene in square tiles in parallel.<br/>
+     * Tiles are visited in Morton (Z-order), so the tiles traced by one thread stay close together in the image.
+     * The given RayTraceWorker is called concurrently, one call per tile.
+     *
+     * @param scene          The scene to render
+     * @param rayTraceWorker The RayTraceWorker to use
+     * @param tileSize       The width and height of a tile in pixels
+     * @param pool           The pool to trace tiles in, its parallelism limits the number of tiles traced at once
+     * @param contexts       The pool of render contexts, a tile takes one or creates one, and returns it trimmed,
+     *                       so it holds about as many contexts as tiles traced at once
+     * @return The rendered image
+     */
+    public @NotNull RenderedImage render(@NotNull Scene scene, @NotNull RayTraceWorker rayTraceWorker, int tileSize,
+                                         @NotNull ForkJoinPool pool, @NotNull Queue<RenderContext> contexts) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        var image = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB);
+        var tilesX = (pixelWidth + tileSize - 1) / tileSize;
+        var tilesY = (pixelHeight + tileSize - 1) / tileSize;
+        // sort the tiles by their morton code
+        var tiles = new long[tilesX * tilesY];
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                tiles[ty * tilesX + tx] = (mortonCode(tx, ty) << 32) | ((long) ty << 16) | tx;
+            }
+        }
+        Arrays.sort(tiles);
+        pool.invoke(new TileTask(scene, rayTraceWorker, contexts, image, tileSize, tiles, 0, tiles.length));
+        return image;
+    }
+
+    private static long mortonCode(int x, int y) {
+        return spreadBits(x) | (spreadBits(y) << 1);
+    }
+
+    private static long spreadBits(int value) {
+        long v = value & 0xFFFF;
+        v = (v | (v << 8)) & 0x00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0FL;
+        v = (v | (v << 2)) & 0x33333333L;
+        v = (v | (v << 1)) & 0x55555555L;
+        return v;
+    }
+
+    private void renderTile(@NotNull Scene scene, @NotNull RayTraceWorker rayTraceWorker, @NotNull Queue<RenderContext> contexts,
+                            @NotNull BufferedImage image, int startX, int startY, int width, int height) {
+        var tilePositions = new Vector3f[width * height];
+        var tileDirections = new Vector3f[width * height];
+        rayGrid.fill(startX, startY, width, height, tilePositions, tileDirections);
+        var context = contexts.poll();
+        if (context == null) {
+            context = new RenderContext();
+        }
+        try {
+            // tiles write disjoint pixels of the image
+            rayTraceInto(context, scene, rayTraceWorker, image, tilePositions, tileDirections, startX, startY, width, height);
+        } finally {
+            context.trim();
+            contexts.offer(context);
+        }
+    }
+
+    private final class TileTask extends RecursiveAction {
+        private final Scene scene;
+        private final RayTraceWorker rayTraceWorker;
+        private final Queue<RenderContext> contexts;
+        private final BufferedImage image;
+        private final int tileSize;
+        private final long[] tiles;
+        private final int from;
+        private final int to;
+
+        TileTask(Scene scene, RayTraceWorker rayTraceWorker, Queue<RenderContext> contexts, BufferedImage image,
+                 int tileSize, long[] tiles, int from, int to) {
+            this.scene = scene;
+            this.rayTraceWorker = rayTraceWorker;
+            this.contexts = contexts;
+            this.image = image;
+            this.tileSize = tileSize;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                var mid = (from + to) >>> 1;
+                invokeAll(new TileTask(scene, rayTraceWorker, contexts, image, tileSize, tiles, from, mid),
+                        new TileTask(scene, rayTraceWorker, contexts, image, tileSize, tiles, mid, to));
+                return;
+            }
+            if (to == from) {
+                return;
+            }
+            var tile = tiles[from];
+            var startX = (int) (tile & 0xFFFF) * tileSize;
+            var startY = (int) ((tile >>> 16) & 0xFFFF) * tileSize;
+            renderTile(scene, rayTraceWorker, contexts, image, startX, startY,
+                    Math.min(tileSize, pixelWidth - startX), Math.min(tileSize, pixelHeight - startY));
+        }
+    }
+
     @Override
     public @NotNull Vector3f position() {
         return position;
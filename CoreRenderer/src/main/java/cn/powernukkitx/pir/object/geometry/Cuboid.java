@@ -12,8 +12,13 @@ public record Cuboid(
         @NotNull Vector3f center, float xLength, float yLength, float zLength,
         int[][] textures,
         // the first dimension is the face, the second dimension is the texture, Down Right Back Left Front Up
-        Vector2i[] textureSizes
+        Vector2i[] textureSizes,
+        Material[] materials
 ) implements Polyhedral {
+    public Cuboid(@NotNull Vector3f center, float xLength, float yLength, float zLength, int[][] textures, Vector2i[] textureSizes) {
+        this(center, xLength, yLength, zLength, textures, textureSizes, Material.defaultFaces());
+    }
+
     @Override
     public Triangle[] triangles() {
         float halfXLength = xLength / 2;
@@ -30,18 +35,18 @@ public record Cuboid(
                 new Vector3f(center.x - halfXLength, center.y + halfYLength, center.z + halfZLength)
         };
         return new Triangle[]{
-                new Triangle(vertices[0], vertices[3], vertices[1], ImageUtil.centralSymmetry(textures[0], textureSizes[0]), textureSizes[0]),
-                new Triangle(vertices[2], vertices[1], vertices[3], textures[0], textureSizes[0]),
-                new Triangle(vertices[2], vertices[3], vertices[6], ImageUtil.centralSymmetry(textures[1], textureSizes[1]), textureSizes[1]),
-                new Triangle(vertices[7], vertices[6], vertices[3], textures[1], textureSizes[1]),
-                new Triangle(vertices[3], vertices[0], vertices[7], ImageUtil.centralSymmetry(textures[2], textureSizes[2]), textureSizes[2]),
-                new Triangle(vertices[4], vertices[7], vertices[0], textures[2], textureSizes[2]),
-                new Triangle(vertices[0], vertices[1], vertices[4], ImageUtil.centralSymmetry(textures[3], textureSizes[3]), textureSizes[3]),
-                new Triangle(vertices[5], vertices[4], vertices[1], textures[3], textureSizes[3]),
-                new Triangle(vertices[1], vertices[2], vertices[5], ImageUtil.centralSymmetry(textures[4], textureSizes[4]), textureSizes[4]),
-                new Triangle(vertices[6], vertices[5], vertices[2], textures[4], textureSizes[4]),
-                new Triangle(vertices[4], vertices[5], vertices[7], ImageUtil.centralSymmetry(textures[5], textureSizes[5]), textureSizes[5]),
-                new Triangle(vertices[6], vertices[7], vertices[5], textures[5], textureSizes[5])
+                new Triangle(vertices[0], vertices[3], vertices[1], ImageUtil.centralSymmetry(textures[0], textureSizes[0]), textureSizes[0], materials[0]),
+                new Triangle(vertices[2], vertices[1], vertices[3], textures[0], textureSizes[0], materials[0]),
+                new Triangle(vertices[2], vertices[3], vertices[6], ImageUtil.centralSymmetry(textures[1], textureSizes[1]), textureSizes[1], materials[1]),
+                new Triangle(vertices[7], vertices[6], vertices[3], textures[1], textureSizes[1], materials[1]),
+                new Triangle(vertices[3], vertices[0], vertices[7], ImageUtil.centralSymmetry(textures[2], textureSizes[2]), textureSizes[2], materials[2]),
+                new Triangle(vertices[4], vertices[7], vertices[0], textures[2], textureSizes[2], materials[2]),
+                new Triangle(vertices[0], vertices[1], vertices[4], ImageUtil.centralSymmetry(textures[3], textureSizes[3]), textureSizes[3], materials[3]),
+                new Triangle(vertices[5], vertices[4], vertices[1], textures[3], textureSizes[3], materials[3]),
+                new Triangle(vertices[1], vertices[2], vertices[5], ImageUtil.centralSymmetry(textures[4], textureSizes[4]), textureSizes[4], materials[4]),
+                new Triangle(vertices[6], vertices[5], vertices[2], textures[4], textureSizes[4], materials[4]),
+                new Triangle(vertices[4], vertices[5], vertices[7], ImageUtil.centralSymmetry(textures[5], textureSizes[5]), textureSizes[5], materials[5]),
+                new Triangle(vertices[6], vertices[7], vertices[5], textures[5], textureSizes[5], materials[5])
         };
     }
 
@@ -122,6 +127,14 @@ public record Cuboid(
 
     public Cuboid(float x, float y, float z, float xLength, float yLength, float zLength, @NotNull BufferedImage texture,
                   @NotNull UVDetail @NotNull [] uvDetails) {
+        this(x, y, z, xLength, yLength, zLength, texture, uvDetails, Material.defaultFaces());
+    }
+
+    /**
+     * @param materials the materials of the faces, in the same order as the uv details
+     */
+    public Cuboid(float x, float y, float z, float xLength, float yLength, float zLength, @NotNull BufferedImage texture,
+                  @NotNull UVDetail @NotNull [] uvDetails, @NotNull Material @NotNull [] materials) {
         this(new Vector3f(x, y, z), xLength, yLength, zLength, new int[][]{
                 makeTexture(texture, uvDetails[0], 0),
                 makeTexture(texture, uvDetails[1], 1),
@@ -136,7 +149,7 @@ public record Cuboid(
                 new Vector2i(uvDetails[3].w, uvDetails[3].h),
                 new Vector2i(uvDetails[4].w, uvDetails[4].h),
                 new Vector2i(uvDetails[5].w, uvDetails[5].h)
-        });
+        }, materials);
     }
 
     private static int @NotNull [] makeTexture(@NotNull BufferedImage texture, @NotNull UVDetail uvDetail, int index) {
@@ -0,0 +1,58 @@
+package cn.powernukkitx.pir.object.geometry;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The material of a face, the render_method of a Bedrock material instance.<br/>
+ * Single-sided workers ignore the back faces of a triangle unless its material is double-sided.
+ * How much of a face lets the layers behind it show through is taken from its texture, see
+ * {@link cn.powernukkitx.pir.util.ImageUtil#opacity}.
+ */
+public enum Material {
+    OPAQUE(false),
+    ALPHA_TEST(true),
+    BLEND(false),
+    DOUBLE_SIDED(true);
+
+    private final boolean doubleSided;
+
+    Material(boolean doubleSided) {
+        this.doubleSided = doubleSided;
+    }
+
+    /**
+     * @return true if the back faces are seen as well
+     */
+    public boolean doubleSided() {
+        return doubleSided;
+    }
+
+    /**
+     * @param renderMethod the render_method of a material instance, null or unknown ones are opaque
+     */
+    public static @NotNull Material ofRenderMethod(@Nullable String renderMethod) {
+        if (renderMethod == null) {
+            return OPAQUE;
+        }
+        return switch (renderMethod) {
+            case "alpha_test" -> ALPHA_TEST;
+            case "blend" -> BLEND;
+            case "double_sided" -> DOUBLE_SIDED;
+            default -> OPAQUE;
+        };
+    }
+
+    /**
+     * @return the materials of the 6 faces of a cube or a cuboid, all opaque
+     */
+    @Contract("-> new")
+    public static @NotNull Material @NotNull [] defaultFaces() {
+        var materials = new Material[6];
+        Arrays.fill(materials, OPAQUE);
+        return materials;
+    }
+}
@@ -17,7 +17,11 @@ import static cn.powernukkitx.pir.util.ImageUtil.FALLBACK_TEXTURE;
 import static cn.powernukkitx.pir.util.ImageUtil.FALLBACK_TEXTURE_SIZE;
 
 public record Triangle(@NotNull Matrix3f posMat, int @NotNull [] texture,
-                       @NotNull Vector2i textureSize) implements Shape, Plane {
+                       @NotNull Vector2i textureSize, @NotNull Material material) implements Shape, Plane {
+    public Triangle(@NotNull Matrix3f posMat, int @NotNull [] texture, @NotNull Vector2i textureSize) {
+        this(posMat, texture, textureSize, Material.OPAQUE);
+    }
+
     public Triangle(@NotNull Matrix3f posMat) {
         this(posMat, FALLBACK_TEXTURE, FALLBACK_TEXTURE_SIZE);
     }
@@ -34,6 +38,11 @@ public record Triangle(@NotNull Matrix3f posMat, int @NotNull [] texture,
         this(new Matrix3f(pos1, pos2, pos3), texture, textureSize);
     }
 
+    public Triangle(@NotNull Vector3f pos1, @NotNull Vector3f pos2, @NotNull Vector3f pos3, int @NotNull [] texture, @NotNull Vector2i textureSize,
+                    @NotNull Material material) {
+        this(new Matrix3f(pos1, pos2, pos3), texture, textureSize, material);
+    }
+
     public Triangle(float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3) {
         this(new Matrix3f(x1, y1, z1, x2, y2, z2, x3, y3, z3), FALLBACK_TEXTURE, FALLBACK_TEXTURE_SIZE);
     }
@@ -14,4 +14,20 @@ public interface Light extends SceneObject {
     }
 
     void calculateIntensity(float @NotNull [] currentIntensity, @NotNull Vector3f @NotNull [] normalVectors);
+
+    /**
+     * Calculate the light intensity of each surface lit by all the lights.
+     * The intensity only depends on the normal vector of the surface, so it can be calculated once per triangle.
+     *
+     * @param lights        the lights
+     * @param normalVectors the unit normal vectors of the surfaces
+     * @return the intensity of each surface
+     */
+    static float @NotNull [] calculateIntensities(@NotNull Light @NotNull [] lights, @NotNull Vector3f @NotNull [] normalVectors) {
+        var intensities = new float[normalVectors.length];
+        for (var light : lights) {
+            light.calculateIntensity(intensities, normalVectors);
+        }
+        return intensities;
+    }
 }
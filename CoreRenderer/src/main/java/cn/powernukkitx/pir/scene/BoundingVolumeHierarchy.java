@@ -0,0 +1,272 @@
+package cn.powernukkitx.pir.scene;
+
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector3f;
+
+/**
+ * An immutable bounding volume hierarchy over the primitives of a frozen scene.<br/>
+ * Nodes are stored in flat arrays, so a built hierarchy can be shared by any number of threads without locking.
+ */
+public final class BoundingVolumeHierarchy {
+    public static final int MAX_LEAF_SIZE = 4;
+    /**
+     * Max depth of the hierarchy, a traversal stack of this size never overflows.
+     */
+    public static final int MAX_DEPTH = 64;
+    /**
+     * Triangle boxes are padded, so that rays grazing an edge are not rejected before the triangle test.
+     */
+    private static final float TRIANGLE_BOUNDS_PADDING = 1e-4f;
+
+    /**
+     * [nodeIndex * 6] minX, minY, minZ, maxX, maxY, maxZ
+     */
+    private final float[] nodeBounds;
+    /**
+     * [nodeIndex * 2] for leaves: offset in {@link #primitives}, primitive count; for inner nodes: left child index, 0.
+     * The right child of an inner node is always {@code leftChild + 1}.
+     */
+    private final int[] nodeData;
+    private final int[] primitives;
+    private final int nodeCount;
+
+    /**
+     * A visitor that is called for each primitive whose bounding box is hit by the ray.
+     */
+    @FunctionalInterface
+    public interface PrimitiveVisitor {
+        /**
+         * @param primitive the index of the primitive
+         * @param tMax      the current max ray parameter
+         * @return the new max ray parameter, return tMax to keep the traversal range unchanged
+         */
+        float visit(int primitive, float tMax);
+    }
+
+    /**
+     * @param primitiveBounds [primitiveIndex * 6] minX, minY, minZ, maxX, maxY, maxZ
+     */
+    public BoundingVolumeHierarchy(float @NotNull [] primitiveBounds) {
+        var primitiveCount = primitiveBounds.length / 6;
+        this.primitives = new int[primitiveCount];
+        var centroids = new float[primitiveCount * 3];
+        for (int i = 0; i < primitiveCount; i++) {
+            primitives[i] = i;
+            centroids[i * 3] = (primitiveBounds[i * 6] + primitiveBounds[i * 6 + 3]) * 0.5f;
+            centroids[i * 3 + 1] = (primitiveBounds[i * 6 + 1] + primitiveBounds[i * 6 + 4]) * 0.5f;
+            centroids[i * 3 + 2] = (primitiveBounds[i * 6 + 2] + primitiveBounds[i * 6 + 5]) * 0.5f;
+        }
+        var maxNodes = Math.max(1, primitiveCount * 2 - 1);
+        var bounds = new float[maxNodes * 6];
+        var data = new int[maxNodes * 2];
+        var count = 1;
+        if (primitiveCount != 0) {
+            count = build(primitiveBounds, centroids, bounds, data, 0, 0, primitiveCount, 1, 0);
+        }
+        this.nodeCount = count;
+        this.nodeBounds = bounds;
+        this.nodeData = data;
+    }
+
+    @Contract("_ -> new")
+    public static @NotNull BoundingVolumeHierarchy ofTriangles(@NotNull Triangle @NotNull [] triangles) {
+        var bounds = new float[triangles.length * 6];
+        for (int i = 0; i < triangles.length; i++) {
+            var mat = triangles[i].posMat();
+            bounds[i * 6] = Math.min(mat.m00, Math.min(mat.m10, mat.m20)) - TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 1] = Math.min(mat.m01, Math.min(mat.m11, mat.m21)) - TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 2] = Math.min(mat.m02, Math.min(mat.m12, mat.m22)) - TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 3] = Math.max(mat.m00, Math.max(mat.m10, mat.m20)) + TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 4] = Math.max(mat.m01, Math.max(mat.m11, mat.m21)) + TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 5] = Math.max(mat.m02, Math.max(mat.m12, mat.m22)) + TRIANGLE_BOUNDS_PADDING;
+        }
+        return new BoundingVolumeHierarchy(bounds);
+    }
+
+    /**
+     * Build the subtree of primitives[from, to) into the given node.
+     *
+     * @return the next free node index
+     */
+    private int build(float[] primitiveBounds, float[] centroids, float[] bounds, int[] data,
+                      int node, int from, int to, int nextFree, int depth) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        float cMinX = Float.POSITIVE_INFINITY, cMinY = Float.POSITIVE_INFINITY, cMinZ = Float.POSITIVE_INFINITY;
+        float cMaxX = Float.NEGATIVE_INFINITY, cMaxY = Float.NEGATIVE_INFINITY, cMaxZ = Float.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            var p = primitives[i];
+            minX = Math.min(minX, primitiveBounds[p * 6]);
+            minY = Math.min(minY, primitiveBounds[p * 6 + 1]);
+            minZ = Math.min(minZ, primitiveBounds[p * 6 + 2]);
+            maxX = Math.max(maxX, primitiveBounds[p * 6 + 3]);
+            maxY = Math.max(maxY, primitiveBounds[p * 6 + 4]);
+            maxZ = Math.max(maxZ, primitiveBounds[p * 6 + 5]);
+            cMinX = Math.min(cMinX, centroids[p * 3]);
+            cMinY = Math.min(cMinY, centroids[p * 3 + 1]);
+            cMinZ = Math.min(cMinZ, centroids[p * 3 + 2]);
+            cMaxX = Math.max(cMaxX, centroids[p * 3]);
+            cMaxY = Math.max(cMaxY, centroids[p * 3 + 1]);
+            cMaxZ = Math.max(cMaxZ, centroids[p * 3 + 2]);
+        }
+        bounds[node * 6] = minX;
+        bounds[node * 6 + 1] = minY;
+        bounds[node * 6 + 2] = minZ;
+        bounds[node * 6 + 3] = maxX;
+        bounds[node * 6 + 4] = maxY;
+        bounds[node * 6 + 5] = maxZ;
+        var count = to - from;
+        // split along the longest axis of the centroid bounds
+        var extentX = cMaxX - cMinX;
+        var extentY = cMaxY - cMinY;
+        var extentZ = cMaxZ - cMinZ;
+        var axis = extentX >= extentY && extentX >= extentZ ? 0 : (extentY >= extentZ ? 1 : 2);
+        var extent = Math.max(extentX, Math.max(extentY, extentZ));
+        if (count <= MAX_LEAF_SIZE || depth >= MAX_DEPTH - 1 || extent <= 0) {
+            data[node * 2] = from;
+            data[node * 2 + 1] = count;
+            return nextFree;
+        }
+        var mid = (from + to) >>> 1;
+        selectNth(centroids, axis, from, to - 1, mid);
+        var left = nextFree;
+        data[node * 2] = left;
+        data[node * 2 + 1] = 0;
+        nextFree = build(primitiveBounds, centroids, bounds, data, left, from, mid, nextFree + 2, depth + 1);
+        return build(primitiveBounds, centroids, bounds, data, left + 1, mid, to, nextFree, depth + 1);
+    }
+
+    /**
+     * Partially sort primitives[lo, hi] so that the nth element is in its sorted place (quick select).
+     */
+    private void selectNth(float[] centroids, int axis, int lo, int hi, int nth) {
+        while (hi > lo) {
+            var pivot = centroids[primitives[(lo + hi) >>> 1] * 3 + axis];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centroids[primitives[i] * 3 + axis] < pivot) i++;
+                while (centroids[primitives[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    var tmp = primitives[i];
+                    primitives[i] = primitives[j];
+                    primitives[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int primitiveCount() {
+        return primitives.length;
+    }
+
+    /**
+     * Visit all primitives whose bounding box intersects the ray in [tMin, tMax], nearer children first.
+     *
+     * @param stack a buffer of at least {@link #MAX_DEPTH} elements
+     * @return the final max ray parameter returned by the visitor
+     */
+    public float traverse(@NotNull Vector3f pos, @NotNull Vector3f direction, float tMin, float tMax,
+                          int @NotNull [] stack, @NotNull PrimitiveVisitor visitor) {
+        if (primitives.length == 0) {
+            return tMax;
+        }
+        var ox = pos.x;
+        var oy = pos.y;
+        var oz = pos.z;
+        var invX = 1f / direction.x;
+        var invY = 1f / direction.y;
+        var invZ = 1f / direction.z;
+        var stackSize = 0;
+        var node = 0;
+        if (Float.isNaN(intersectNode(node, ox, oy, oz, invX, invY, invZ, tMin, tMax))) {
+            return tMax;
+        }
+        while (true) {
+            var count = nodeData[node * 2 + 1];
+            if (count > 0) {
+                for (int i = nodeData[node * 2], end = i + count; i < end; i++) {
+                    tMax = visitor.visit(primitives[i], tMax);
+                }
+            } else {
+                var left = nodeData[node * 2];
+                var right = left + 1;
+                var tLeft = intersectNode(left, ox, oy, oz, invX, invY, invZ, tMin, tMax);
+                var tRight = intersectNode(right, ox, oy, oz, invX, invY, invZ, tMin, tMax);
+                var hitLeft = !Float.isNaN(tLeft);
+                var hitRight = !Float.isNaN(tRight);
+                if (hitLeft && hitRight) {
+                    if (tRight < tLeft) {
+                        stack[stackSize++] = left;
+                        node = right;
+                    } else {
+                        stack[stackSize++] = right;
+                        node = left;
+                    }
+                    continue;
+                } else if (hitLeft) {
+                    node = left;
+                    continue;
+                } else if (hitRight) {
+                    node = right;
+                    continue;
+                }
+            }
+            // pop the next node that may still be in range
+            do {
+                if (stackSize == 0) {
+                    return tMax;
+                }
+                node = stack[--stackSize];
+            } while (Float.isNaN(intersectNode(node, ox, oy, oz, invX, invY, invZ, tMin, tMax)));
+        }
+    }
+
+    /**
+     * Slab test against the box of the given node.
+     *
+     * @return the entry ray parameter, NaN if the ray misses the box in [tMin, tMax]
+     */
+    private float intersectNode(int node, float ox, float oy, float oz, float invX, float invY, float invZ, float tMin, float tMax) {
+        var offset = node * 6;
+        if (Float.isInfinite(invX)) {
+            if (ox < nodeBounds[offset] || ox > nodeBounds[offset + 3]) return Float.NaN;
+        } else {
+            var t1 = (nodeBounds[offset] - ox) * invX;
+            var t2 = (nodeBounds[offset + 3] - ox) * invX;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (Float.isInfinite(invY)) {
+            if (oy < nodeBounds[offset + 1] || oy > nodeBounds[offset + 4]) return Float.NaN;
+        } else {
+            var t1 = (nodeBounds[offset + 1] - oy) * invY;
+            var t2 = (nodeBounds[offset + 4] - oy) * invY;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (Float.isInfinite(invZ)) {
+            if (oz < nodeBounds[offset + 2] || oz > nodeBounds[offset + 5]) return Float.NaN;
+        } else {
+            var t1 = (nodeBounds[offset + 2] - oz) * invZ;
+            var t2 = (nodeBounds[offset + 5] - oz) * invZ;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax ? tMin : Float.NaN;
+    }
+}
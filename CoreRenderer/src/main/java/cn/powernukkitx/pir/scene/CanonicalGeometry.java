@@ -0,0 +1,99 @@
+package cn.powernukkitx.pir.scene;
+
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import cn.powernukkitx.pir.util.SortUtil;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The triangles of a scene in a canonical order, sorted by position and texture size,
+ * so scenes built from the same shapes in any order have equal geometries.<br/>
+ * It keeps a compact copy of what decides the hits of a ray: the vertex positions, the texture sizes and the sides,
+ * and is compared by content, a cache key made of it never matches another geometry.
+ */
+public final class CanonicalGeometry {
+    private final int[] order;
+    private final float[] positions;
+    private final int[] textureSizes;
+    private final boolean[] doubleSided;
+    private final int hash;
+
+    private CanonicalGeometry(int[] order, float[] positions, int[] textureSizes, boolean[] doubleSided) {
+        this.order = order;
+        this.positions = positions;
+        this.textureSizes = textureSizes;
+        this.doubleSided = doubleSided;
+        this.hash = 31 * (31 * Arrays.hashCode(positions) + Arrays.hashCode(textureSizes)) + Arrays.hashCode(doubleSided);
+    }
+
+    @Contract("_ -> new")
+    public static @NotNull CanonicalGeometry of(@NotNull Triangle @NotNull [] triangles) {
+        var order = new int[triangles.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        SortUtil.sort(order, 0, order.length, (o1, o2) -> compareGeometry(triangles[o1], triangles[o2]));
+        var positions = new float[triangles.length * 9];
+        var textureSizes = new int[triangles.length * 2];
+        var doubleSided = new boolean[triangles.length];
+        for (int i = 0; i < order.length; i++) {
+            var triangle = triangles[order[i]];
+            triangle.posMat().get(positions, i * 9);
+            textureSizes[i * 2] = triangle.textureSize().x;
+            textureSizes[i * 2 + 1] = triangle.textureSize().y;
+            doubleSided[i] = triangle.material().doubleSided();
+        }
+        return new CanonicalGeometry(order, positions, textureSizes, doubleSided);
+    }
+
+    private static int compareGeometry(@NotNull Triangle t1, @NotNull Triangle t2) {
+        var m1 = t1.posMat();
+        var m2 = t2.posMat();
+        int result;
+        if ((result = Float.compare(m1.m00, m2.m00)) != 0) return result;
+        if ((result = Float.compare(m1.m01, m2.m01)) != 0) return result;
+        if ((result = Float.compare(m1.m02, m2.m02)) != 0) return result;
+        if ((result = Float.compare(m1.m10, m2.m10)) != 0) return result;
+        if ((result = Float.compare(m1.m11, m2.m11)) != 0) return result;
+        if ((result = Float.compare(m1.m12, m2.m12)) != 0) return result;
+        if ((result = Float.compare(m1.m20, m2.m20)) != 0) return result;
+        if ((result = Float.compare(m1.m21, m2.m21)) != 0) return result;
+        if ((result = Float.compare(m1.m22, m2.m22)) != 0) return result;
+        if ((result = Integer.compare(t1.textureSize().x, t2.textureSize().x)) != 0) return result;
+        return Integer.compare(t1.textureSize().y, t2.textureSize().y);
+    }
+
+    /**
+     * @return the scene triangle indices in the canonical order, [canonical index] = scene index,
+     * the returned array should not be modified
+     */
+    public int @NotNull [] order() {
+        return order;
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @return the estimated size of the copy of the geometry in bytes
+     */
+    public long bytes() {
+        return 64 + 4L * (order.length + positions.length + textureSizes.length) + doubleSided.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        // the order is not compared, it only maps the canonical triangles back to one scene
+        return this == o || o instanceof CanonicalGeometry geometry && hash == geometry.hash
+                && Arrays.equals(positions, geometry.positions) && Arrays.equals(textureSizes, geometry.textureSizes)
+                && Arrays.equals(doubleSided, geometry.doubleSided);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -1,44 +1,94 @@
 package cn.powernukkitx.pir.scene;
 
+import cn.powernukkitx.pir.functor.PackedCuboids;
+import cn.powernukkitx.pir.functor.PackedTriangles;
 import cn.powernukkitx.pir.object.Ray;
 import cn.powernukkitx.pir.object.*;
+import cn.powernukkitx.pir.object.camera.Camera;
+import cn.powernukkitx.pir.object.camera.OrthogonalCamera;
+import cn.powernukkitx.pir.object.geometry.Cube;
+import cn.powernukkitx.pir.object.geometry.Cuboid;
 import cn.powernukkitx.pir.object.geometry.Polyhedral;
 import cn.powernukkitx.pir.object.geometry.Shape;
 import cn.powernukkitx.pir.object.geometry.Triangle;
 import cn.powernukkitx.pir.object.light.Light;
+import cn.powernukkitx.pir.util.ImageUtil;
+import cn.powernukkitx.pir.util.MathUtil;
 import cn.powernukkitx.pir.worker.RayTraceWorker;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix3f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
 import java.util.*;
 
 public final class FrozenScene implements Scene {
+    /**
+     * Cuboid boxes are padded, so that rays grazing a face are not rejected before the slab test.
+     */
+    private static final float CUBOID_BOUNDS_PADDING = 1e-4f;
+
     private final Set<SceneObject> rawScene;
-    private final Triangle[] triangles;
+    // the Triangles and Polyhedrals, expanded into triangles on first use
+    private final SceneObject[] geometries;
     private final Shape[] otherShapes;
     private final Light[] lights;
+    private final Cuboid[] cuboids;
+    private final boolean cuboidsOnly;
+    // the camera the scene is culled for and if its back faces are culled, see #FrozenScene(Set, Camera, boolean)
+    private final @Nullable Camera camera;
+    private final boolean singleSided;
+    // built on first use, cuboid workers never expand the cuboids into triangles
+    private volatile TriangleData triangleData;
+    private volatile CuboidData cuboidData;
+    // built on first use, only deferred workers need it
+    private volatile CanonicalGeometry canonicalGeometry;
+    // built on first use, only grid workers need it, null if the triangles are not axis-aligned
+    private VoxelGrid voxelGrid;
+    // written after voxelGrid, so voxelGrid is visible once it is true
+    private volatile boolean voxelGridBuilt;
+
+    private record TriangleData(Triangle[] triangles, BoundingVolumeHierarchy bvh, PackedTriangles packedTriangles,
+                                float[] lightIntensities, int[][] litTextures, TextureAtlas textureAtlas, boolean[] opaqueTextures) {
+    }
+
+    private record CuboidData(PackedCuboids packedCuboids, BoundingVolumeHierarchy bvh, int[][] litTextures, TextureAtlas textureAtlas) {
+    }
 
     public FrozenScene(@NotNull Set<SceneObject> rawScene) {
+        this(rawScene, null, false);
+    }
+
+    /**
+     * Freeze the scene for one camera, the geometry that no ray of the camera can hit is dropped before tracing:
+     * the triangles and cuboids outside the view volume of the camera, see {@link Camera#isBoxVisible},
+     * and if singleSided, the triangles facing away from an {@link OrthogonalCamera}, which single-sided workers reject anyway,
+     * unless their materials are double-sided.<br/>
+     * The culled scene renders the same image with this camera, with workers of the same sidedness.
+     *
+     * @param camera      the camera to cull for, or null to keep all the geometry
+     * @param singleSided if the scene is traced by single-sided workers only
+     */
+    public FrozenScene(@NotNull Set<SceneObject> rawScene, @Nullable Camera camera, boolean singleSided) {
         this.rawScene = Collections.unmodifiableSet(rawScene);
-        var triangleList = new ArrayList<Triangle>(rawScene.size());
+        this.camera = camera;
+        this.singleSided = singleSided;
+        var geometryList = new ArrayList<SceneObject>(rawScene.size());
         var otherShapeList = new ArrayList<Shape>();
         var lightList = new ArrayList<Light>();
         for (var obj : rawScene) {
             if (obj.type() == ObjectType.GEOMETRY) {
                 if (obj instanceof Shape shape) {
-                    if (shape instanceof Triangle triangle) {
-                        triangleList.add(triangle);
+                    if (shape instanceof Triangle) {
+                        geometryList.add(obj);
                     } else {
                         otherShapeList.add(shape);
                     }
                 }
-                if (obj instanceof Polyhedral polyhedral) {
-                    triangleList.addAll(Arrays.stream(polyhedral.triangles()).filter(e -> {
-                        var textureSize = e.textureSize();
-                        return textureSize.x != 0 && textureSize.y != 0;
-                    }).toList());
+                if (obj instanceof Polyhedral) {
+                    geometryList.add(obj);
                 }
             } else if (obj.type() == ObjectType.LIGHT) {
                 if (obj instanceof Light light) {
@@ -46,9 +96,303 @@ public final class FrozenScene implements Scene {
                 }
             }
         }
-        triangles = triangleList.toArray(Triangle[]::new);
+        removeHiddenFaces(geometryList);
+        geometries = geometryList.toArray(SceneObject[]::new);
         otherShapes = otherShapeList.toArray(Shape[]::new);
         lights = lightList.toArray(Light[]::new);
+        var cuboidList = new ArrayList<Cuboid>();
+        for (var geometry : geometries) {
+            if (geometry instanceof Cuboid cuboid) {
+                cuboidList.add(cuboid);
+            } else if (geometry instanceof Cube cube) {
+                cuboidList.add(cube.toCuboid());
+            }
+        }
+        cuboidsOnly = cuboidList.size() == geometries.length;
+        if (camera != null) {
+            cuboidList.removeIf(cuboid -> {
+                var center = cuboid.center();
+                var halfXLength = cuboid.xLength() / 2;
+                var halfYLength = cuboid.yLength() / 2;
+                var halfZLength = cuboid.zLength() / 2;
+                return !camera.isBoxVisible(center.x - halfXLength, center.y - halfYLength, center.z - halfZLength,
+                        center.x + halfXLength, center.y + halfYLength, center.z + halfZLength);
+            });
+        }
+        cuboids = cuboidList.toArray(Cuboid[]::new);
+    }
+
+    /**
+     * Replace the Cuboids and Cubes that have faces hidden by their neighbours with cuboids without them, see {@link HiddenFaces}.
+     */
+    private static void removeHiddenFaces(@NotNull List<SceneObject> geometryList) {
+        var indices = new ArrayList<Integer>();
+        var cuboidList = new ArrayList<Cuboid>();
+        for (int i = 0; i < geometryList.size(); i++) {
+            if (geometryList.get(i) instanceof Cuboid cuboid) {
+                indices.add(i);
+                cuboidList.add(cuboid);
+            } else if (geometryList.get(i) instanceof Cube cube) {
+                indices.add(i);
+                cuboidList.add(cube.toCuboid());
+            }
+        }
+        var cuboids = cuboidList.toArray(Cuboid[]::new);
+        var visibleCuboids = HiddenFaces.removeHiddenFaces(cuboids);
+        for (int i = 0; i < cuboids.length; i++) {
+            if (visibleCuboids[i] != cuboids[i]) {
+                geometryList.set(indices.get(i), visibleCuboids[i]);
+            }
+        }
+    }
+
+    private @NotNull TriangleData triangleData() {
+        var data = triangleData;
+        if (data == null) {
+            synchronized (this) {
+                data = triangleData;
+                if (data == null) {
+                    data = buildTriangleData();
+                    triangleData = data;
+                }
+            }
+        }
+        return data;
+    }
+
+    private @NotNull TriangleData buildTriangleData() {
+        var triangleList = new ArrayList<Triangle>(geometries.length);
+        for (var geometry : geometries) {
+            // fully transparent triangles are never seen
+            if (geometry instanceof Triangle triangle && ImageUtil.opacity(triangle.texture()) != ImageUtil.Opacity.TRANSPARENT) {
+                triangleList.add(triangle);
+            }
+            if (geometry instanceof Polyhedral polyhedral) {
+                triangleList.addAll(Arrays.stream(polyhedral.triangles()).filter(e -> {
+                    var textureSize = e.textureSize();
+                    return textureSize.x != 0 && textureSize.y != 0 && ImageUtil.opacity(e.texture()) != ImageUtil.Opacity.TRANSPARENT;
+                }).toList());
+            }
+        }
+        var triangleMats = new ArrayList<Matrix3f>(triangleList.size());
+        var normalVectors = new ArrayList<Vector3f>(triangleList.size());
+        // culling keeps the order of the triangles, so the hits at the same distance are still ordered the same
+        for (var iterator = triangleList.iterator(); iterator.hasNext(); ) {
+            var triangle = iterator.next();
+            var triangleMat = triangle.posMat();
+            var normalVector = PackedTriangles.normalVector(triangleMat, new Vector3f());
+            if (isCulled(triangleMat, normalVector, triangle.material().doubleSided())) {
+                iterator.remove();
+            } else {
+                triangleMats.add(triangleMat);
+                normalVectors.add(normalVector);
+            }
+        }
+        var triangles = triangleList.toArray(Triangle[]::new);
+        var bvh = BoundingVolumeHierarchy.ofTriangles(triangles);
+        var doubleSided = new boolean[triangles.length];
+        for (int i = 0; i < triangles.length; i++) {
+            doubleSided[i] = triangles[i].material().doubleSided();
+        }
+        var packedTriangles = PackedTriangles.of(triangleMats.toArray(Matrix3f[]::new), normalVectors.toArray(Vector3f[]::new), doubleSided);
+        var lightIntensities = Light.calculateIntensities(lights, packedTriangles.normalVectors());
+        var litTextures = new int[triangles.length][];
+        var textureWidths = new int[triangles.length];
+        var opaqueTextures = new boolean[triangles.length];
+        for (int i = 0; i < triangles.length; i++) {
+            litTextures[i] = ImageUtil.light(triangles[i].texture(), lightIntensities[i]);
+            textureWidths[i] = triangles[i].textureSize().x;
+            opaqueTextures[i] = ImageUtil.opacity(triangles[i].texture()) == ImageUtil.Opacity.OPAQUE;
+        }
+        return new TriangleData(triangles, bvh, packedTriangles, lightIntensities, litTextures,
+                TextureAtlas.of(litTextures, textureWidths), opaqueTextures);
+    }
+
+    private boolean isCulled(@NotNull Matrix3f triangle, @NotNull Vector3f normalVector, boolean doubleSided) {
+        if (camera == null) {
+            return false;
+        }
+        if (singleSided && !doubleSided && camera instanceof OrthogonalCamera) {
+            // all the rays share the direction, the same test as TriangleFunctor#intersectsSingleSided
+            var direction = camera.direction();
+            if (normalVector.x * direction.x + (normalVector.y * direction.y + normalVector.z * direction.z) > MathUtil.EPSILON_NEG) {
+                return true;
+            }
+        }
+        return !camera.isBoxVisible(
+                Math.min(triangle.m00, Math.min(triangle.m10, triangle.m20)),
+                Math.min(triangle.m01, Math.min(triangle.m11, triangle.m21)),
+                Math.min(triangle.m02, Math.min(triangle.m12, triangle.m22)),
+                Math.max(triangle.m00, Math.max(triangle.m10, triangle.m20)),
+                Math.max(triangle.m01, Math.max(triangle.m11, triangle.m21)),
+                Math.max(triangle.m02, Math.max(triangle.m12, triangle.m22)));
+    }
+
+    private @NotNull CuboidData cuboidData() {
+        var data = cuboidData;
+        if (data == null) {
+            synchronized (this) {
+                data = cuboidData;
+                if (data == null) {
+                    var packedCuboids = PackedCuboids.of(cuboids);
+                    var lightIntensities = Light.calculateIntensities(lights, packedCuboids.normalVectors());
+                    var litTextures = new int[lightIntensities.length][];
+                    var textureWidths = new int[lightIntensities.length];
+                    for (int i = 0; i < litTextures.length; i++) {
+                        if (packedCuboids.textureWidth(i) != 0) {
+                            litTextures[i] = ImageUtil.light(cuboids[i / PackedCuboids.FACES].textures()[i % PackedCuboids.FACES], lightIntensities[i]);
+                            textureWidths[i] = packedCuboids.textureWidth(i);
+                        }
+                    }
+                    data = new CuboidData(packedCuboids, new BoundingVolumeHierarchy(packedCuboids.bounds(CUBOID_BOUNDS_PADDING)), litTextures,
+                            TextureAtlas.of(litTextures, textureWidths));
+                    cuboidData = data;
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @return The triangles of this scene, the returned array should not be modified.
+     * Cuboids are expanded into their triangles on the first call.
+     */
+    public @NotNull Triangle @NotNull [] triangles() {
+        return triangleData().triangles();
+    }
+
+    /**
+     * @return The shapes that are not triangles of this scene, the returned array should not be modified.
+     */
+    public @NotNull Shape @NotNull [] otherShapes() {
+        return otherShapes;
+    }
+
+    /**
+     * @return The lights of this scene, the returned array should not be modified.
+     */
+    public @NotNull Light @NotNull [] lights() {
+        return lights;
+    }
+
+    /**
+     * @return The bounding volume hierarchy over {@link #triangles()}, primitive indices are triangle indices.
+     */
+    public @NotNull BoundingVolumeHierarchy bvh() {
+        return triangleData().bvh();
+    }
+
+    /**
+     * @return The intersection data of {@link #triangles()} packed at freeze time, in the same order.
+     */
+    public @NotNull PackedTriangles packedTriangles() {
+        return triangleData().packedTriangles();
+    }
+
+    /**
+     * @return The light intensity of each of {@link #triangles()} lit by {@link #lights()}, the returned array should not be modified.
+     */
+    public float @NotNull [] lightIntensities() {
+        return triangleData().lightIntensities();
+    }
+
+    /**
+     * @return The texture of each of {@link #triangles()} lit by its {@link #lightIntensities()}, see {@link ImageUtil#light}.
+     * The returned arrays should not be modified.
+     */
+    public int @NotNull [] @NotNull [] litTextures() {
+        return triangleData().litTextures();
+    }
+
+    /**
+     * @return The {@link #litTextures()} packed into one atlas, primitive indices are triangle indices.
+     */
+    public @NotNull TextureAtlas textureAtlas() {
+        return triangleData().textureAtlas();
+    }
+
+    /**
+     * @return true for each of {@link #triangles()} whose texture is fully opaque, see {@link ImageUtil#opacity},
+     * a ray can stop at its first hit on such a triangle. The returned array should not be modified.
+     */
+    public boolean @NotNull [] opaqueTextures() {
+        return triangleData().opaqueTextures();
+    }
+
+    /**
+     * @return {@link #triangles()} in their canonical order, equal for the scenes made of the same shapes in any order
+     */
+    public @NotNull CanonicalGeometry canonicalGeometry() {
+        var geometry = canonicalGeometry;
+        if (geometry == null) {
+            synchronized (this) {
+                geometry = canonicalGeometry;
+                if (geometry == null) {
+                    geometry = CanonicalGeometry.of(triangles());
+                    canonicalGeometry = geometry;
+                }
+            }
+        }
+        return geometry;
+    }
+
+    /**
+     * @return true if all the triangles of this scene are faces of {@link #cuboids()}, so the scene can be traced by boxes.
+     */
+    public boolean isCuboidsOnly() {
+        return cuboidsOnly;
+    }
+
+    /**
+     * @return The Cuboids and Cubes of this scene as cuboids, the returned array should not be modified.
+     */
+    public @NotNull Cuboid @NotNull [] cuboids() {
+        return cuboids;
+    }
+
+    /**
+     * @return The intersection data of {@link #cuboids()}, in the same order. It is built on the first call.
+     */
+    public @NotNull PackedCuboids packedCuboids() {
+        return cuboidData().packedCuboids();
+    }
+
+    /**
+     * @return The bounding volume hierarchy over {@link #cuboids()}, primitive indices are cuboid indices.
+     */
+    public @NotNull BoundingVolumeHierarchy cuboidBvh() {
+        return cuboidData().bvh();
+    }
+
+    /**
+     * @return [faceId] The texture of each face of {@link #cuboids()} lit by {@link #lights()}, null for the faces that are never hit,
+     * see {@link PackedCuboids}. The returned arrays should not be modified.
+     */
+    public int @NotNull [] @NotNull [] cuboidLitTextures() {
+        return cuboidData().litTextures();
+    }
+
+    /**
+     * @return The {@link #cuboidLitTextures()} packed into one atlas, primitive indices are face ids.
+     */
+    public @NotNull TextureAtlas cuboidTextureAtlas() {
+        return cuboidData().textureAtlas();
+    }
+
+    /**
+     * @return The voxel grid over {@link #triangles()}, primitive indices are triangle indices,
+     * or null if the triangles are not all axis-aligned, see {@link VoxelGrid#ofTriangles}. It is built on the first call.
+     */
+    public @Nullable VoxelGrid voxelGrid() {
+        if (!voxelGridBuilt) {
+            synchronized (this) {
+                if (!voxelGridBuilt) {
+                    voxelGrid = VoxelGrid.ofTriangles(triangles());
+                    voxelGridBuilt = true;
+                }
+            }
+        }
+        return voxelGrid;
     }
 
     @Override
@@ -62,14 +406,20 @@ public final class FrozenScene implements Scene {
         return this;
     }
 
+    @Override
+    @Contract("_, _ -> new")
+    public @NotNull Scene freeze(@Nullable Camera camera, boolean singleSided) {
+        return new FrozenScene(rawScene, camera, singleSided);
+    }
+
     @Override
     public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Ray @NotNull [] ray, @NotNull RayTraceWorker rayTraceWorker) {
-        return rayTraceWorker.rayTrace(ray, triangles, otherShapes, lights, getDefaultColor());
+        return rayTraceWorker.rayTrace(ray, triangles(), otherShapes, lights, getDefaultColor());
     }
 
     @Override
     public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions, @NotNull Vector3f @NotNull [] rayDirections, @NotNull RayTraceWorker rayTraceWorker) {
-        return rayTraceWorker.rayTrace(rayPositions, rayDirections, triangles, otherShapes, lights, getDefaultColor());
+        return rayTraceWorker.rayTrace(rayPositions, rayDirections, this);
     }
 
     @Override
@@ -97,6 +447,7 @@ public final class FrozenScene implements Scene {
     @Override
     public SceneObject @NotNull [] toArray() {
         // contact the two arrays
+        var triangles = triangles();
         var result = new SceneObject[triangles.length + otherShapes.length];
         System.arraycopy(triangles, 0, result, 0, triangles.length);
         System.arraycopy(otherShapes, 0, result, triangles.length, otherShapes.length);
@@ -108,6 +459,7 @@ public final class FrozenScene implements Scene {
     @Override
     public <T> T @NotNull [] toArray(@NotNull T @NotNull [] a) {
         // contact the two arrays
+        var triangles = triangles();
         var result = Arrays.copyOf(a, triangles.length + otherShapes.length);
         System.arraycopy(triangles, 0, result, 0, triangles.length);
         System.arraycopy(otherShapes, 0, result, triangles.length, otherShapes.length);
@@ -0,0 +1,155 @@
+package cn.powernukkitx.pir.scene;
+
+import cn.powernukkitx.pir.functor.PackedCuboids;
+import cn.powernukkitx.pir.object.geometry.Cuboid;
+import cn.powernukkitx.pir.util.ImageUtil;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector2i;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the faces between touching cuboids that can never be seen, and drops them before tracing.<br/>
+ * A face of an opaque cuboid is hidden if it is fully covered by the opposite face of another opaque cuboid
+ * that touches it from outside: a ray can only reach it through the inside of the other cuboid,
+ * whose opaque faces stop the ray first. Block models built from many adjacent cuboids have plenty of such faces.<br/>
+ * A cuboid is opaque if all of its six faces have a texture without any transparent texel, and it is not flat.
+ */
+public final class HiddenFaces {
+    /**
+     * Faces closer than it are coplanar, block models are built on a lattice far coarser than it.
+     */
+    private static final float EPSILON = 1e-5f;
+    private static final int[] EMPTY_TEXTURE = new int[0];
+    // the faces at the min and the max bound of each axis
+    private static final int[] MIN_FACES = {PackedCuboids.BACK, PackedCuboids.LEFT, PackedCuboids.DOWN};
+    private static final int[] MAX_FACES = {PackedCuboids.FRONT, PackedCuboids.RIGHT, PackedCuboids.UP};
+
+    private HiddenFaces() {
+    }
+
+    /**
+     * Remove the hidden faces of the cuboids, a removed face has no texture, so it is never hit.
+     *
+     * @param cuboids the cuboids of a scene
+     * @return the cuboids in the same order, the ones that lose a face are replaced by copies without the face
+     */
+    public static @NotNull Cuboid @NotNull [] removeHiddenFaces(@NotNull Cuboid @NotNull [] cuboids) {
+        var size = cuboids.length;
+        // [index * 6] minX, minY, minZ, maxX, maxY, maxZ
+        var bounds = new float[size * 6];
+        var opaque = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            var cuboid = cuboids[i];
+            var center = cuboid.center();
+            bounds[i * 6] = center.x - cuboid.xLength() / 2;
+            bounds[i * 6 + 1] = center.y - cuboid.yLength() / 2;
+            bounds[i * 6 + 2] = center.z - cuboid.zLength() / 2;
+            bounds[i * 6 + 3] = center.x + cuboid.xLength() / 2;
+            bounds[i * 6 + 4] = center.y + cuboid.yLength() / 2;
+            bounds[i * 6 + 5] = center.z + cuboid.zLength() / 2;
+            opaque[i] = isOpaque(cuboid);
+        }
+        var hidden = new boolean[size * PackedCuboids.FACES];
+        var anyHidden = false;
+        var opaqueIndices = IntStream.range(0, size).filter(i -> opaque[i]).boxed().toArray(Integer[]::new);
+        for (int axis = 0; axis < 3; axis++) {
+            // sorted by the min bound, the cuboids touching the max face of a cuboid are found by a binary search
+            var minAxis = axis;
+            var byMin = opaqueIndices.clone();
+            Arrays.sort(byMin, Comparator.comparingDouble(i -> bounds[i * 6 + minAxis]));
+            var mins = new float[byMin.length];
+            for (int k = 0; k < byMin.length; k++) {
+                mins[k] = bounds[byMin[k] * 6 + axis];
+            }
+            for (var a : opaqueIndices) {
+                var plane = bounds[a * 6 + 3 + axis];
+                for (int k = lowerBound(mins, plane - EPSILON); k < mins.length && mins[k] <= plane + EPSILON; k++) {
+                    var b = byMin[k];
+                    if (b == a) {
+                        continue;
+                    }
+                    // the max face of a touches the min face of b
+                    if (covers(bounds, b, a, axis)) {
+                        hidden[a * PackedCuboids.FACES + MAX_FACES[axis]] = true;
+                        anyHidden = true;
+                    }
+                    if (covers(bounds, a, b, axis)) {
+                        hidden[b * PackedCuboids.FACES + MIN_FACES[axis]] = true;
+                        anyHidden = true;
+                    }
+                }
+            }
+        }
+        if (!anyHidden) {
+            return cuboids;
+        }
+        var result = cuboids.clone();
+        for (int i = 0; i < size; i++) {
+            int[][] textures = null;
+            Vector2i[] textureSizes = null;
+            for (int face = 0; face < PackedCuboids.FACES; face++) {
+                if (hidden[i * PackedCuboids.FACES + face]) {
+                    if (textures == null) {
+                        textures = cuboids[i].textures().clone();
+                        textureSizes = cuboids[i].textureSizes().clone();
+                    }
+                    textures[face] = EMPTY_TEXTURE;
+                    textureSizes[face] = new Vector2i();
+                }
+            }
+            if (textures != null) {
+                var cuboid = cuboids[i];
+                result[i] = new Cuboid(cuboid.center(), cuboid.xLength(), cuboid.yLength(), cuboid.zLength(), textures, textureSizes,
+                        cuboid.materials());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the cuboid is solid and every texel of its faces is opaque
+     */
+    public static boolean isOpaque(@NotNull Cuboid cuboid) {
+        if (cuboid.xLength() <= 0 || cuboid.yLength() <= 0 || cuboid.zLength() <= 0) {
+            return false;
+        }
+        for (int face = 0; face < PackedCuboids.FACES; face++) {
+            var texture = cuboid.textures()[face];
+            var textureSize = cuboid.textureSizes()[face];
+            if (texture == null || textureSize == null || textureSize.x <= 0 || textureSize.y <= 0
+                    || ImageUtil.opacity(texture) != ImageUtil.Opacity.OPAQUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the face of the cover cuboid contains the face of the covered cuboid on the other two axes
+     */
+    private static boolean covers(float[] bounds, int cover, int covered, int axis) {
+        for (int other = 0; other < 3; other++) {
+            if (other != axis && (bounds[cover * 6 + other] > bounds[covered * 6 + other] + EPSILON
+                    || bounds[cover * 6 + 3 + other] < bounds[covered * 6 + 3 + other] - EPSILON)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lowerBound(float[] sorted, float value) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -2,10 +2,12 @@ package cn.powernukkitx.pir.scene;
 
 import cn.powernukkitx.pir.object.Ray;
 import cn.powernukkitx.pir.object.SceneObject;
+import cn.powernukkitx.pir.object.camera.Camera;
 import cn.powernukkitx.pir.util.ColorUtil;
 import cn.powernukkitx.pir.worker.RayTraceWorker;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
@@ -31,6 +33,19 @@ public interface Scene extends Set<SceneObject> {
         return new FrozenScene(this);
     }
 
+    /**
+     * Freeze a delegate of this scene for rendering with one camera,
+     * the geometry that the camera cannot see is dropped, see {@link FrozenScene#FrozenScene(Set, Camera, boolean)}.
+     *
+     * @param camera      the camera the scene is rendered with, or null to keep all the geometry
+     * @param singleSided if the scene is rendered by single-sided workers only, then the back faces are dropped too
+     * @return A delegate of this scene. The delegate cannot be modified.
+     */
+    @Contract("_, _ -> new")
+    default @NotNull Scene freeze(@Nullable Camera camera, boolean singleSided) {
+        return new FrozenScene(this, camera, singleSided);
+    }
+
     @NotNull
     Vector4f @NotNull [] rayTrace(@NotNull Ray @NotNull [] ray, @NotNull RayTraceWorker rayTraceWorker);
 
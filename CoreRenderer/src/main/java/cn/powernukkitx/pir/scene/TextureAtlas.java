@@ -0,0 +1,95 @@
+package cn.powernukkitx.pir.scene;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.IdentityHashMap;
+
+/**
+ * The textures of the primitives of a scene packed one after another into one array, so the texel fetches of the
+ * workers read one contiguous array instead of many small ones scattered over the heap.<br/>
+ * Each primitive has the offset of its texture in the atlas and the width of the texture as the row stride.
+ * A texture shared by several primitives, e.g. the same texture lit by the same intensity, is packed once.
+ */
+public final class TextureAtlas {
+    private final int[] texels;
+    private final int[] offsets;
+    private final int[] widths;
+
+    private TextureAtlas(int[] texels, int[] offsets, int[] widths) {
+        this.texels = texels;
+        this.offsets = offsets;
+        this.widths = widths;
+    }
+
+    /**
+     * @param textures [primitive] the textures, null for the primitives that are never shaded
+     * @param widths   [primitive] the widths of the textures
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull TextureAtlas of(int @NotNull [] @NotNull [] textures, int @NotNull [] widths) {
+        if (textures.length != widths.length) {
+            throw new IllegalArgumentException("textures and widths must have the same length");
+        }
+        var offsets = new int[textures.length];
+        var packed = new IdentityHashMap<int[], Integer>();
+        long size = 0;
+        for (int i = 0; i < textures.length; i++) {
+            var texture = textures[i];
+            if (texture == null) {
+                continue;
+            }
+            var offset = packed.get(texture);
+            if (offset == null) {
+                offset = (int) size;
+                packed.put(texture, offset);
+                size += texture.length;
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("The textures are too large for one atlas");
+                }
+            }
+            offsets[i] = offset;
+        }
+        var texels = new int[(int) size];
+        for (var entry : packed.entrySet()) {
+            System.arraycopy(entry.getKey(), 0, texels, entry.getValue(), entry.getKey().length);
+        }
+        return new TextureAtlas(texels, offsets, widths.clone());
+    }
+
+    /**
+     * @return the texel at x, y of the texture of the primitive
+     */
+    public int texel(int primitive, int x, int y) {
+        return texels[offsets[primitive] + x + y * widths[primitive]];
+    }
+
+    /**
+     * @param index the index of the texel in the texture of the primitive, x + y * width
+     * @return the texel
+     */
+    public int texel(int primitive, int index) {
+        return texels[offsets[primitive] + index];
+    }
+
+    /**
+     * @return all the texels, the returned array should not be modified
+     */
+    public int @NotNull [] texels() {
+        return texels;
+    }
+
+    /**
+     * @return the offset of the texture of the primitive in {@link #texels()}
+     */
+    public int offset(int primitive) {
+        return offsets[primitive];
+    }
+
+    /**
+     * @return the width of the texture of the primitive, the stride of its rows in {@link #texels()}
+     */
+    public int width(int primitive) {
+        return widths[primitive];
+    }
+}
@@ -0,0 +1,270 @@
+package cn.powernukkitx.pir.scene;
+
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable uniform grid over the axis-aligned triangles of a frozen scene, walked with a 3D DDA (Amanatides-Woo).<br/>
+ * Block models are built on a lattice of 1/16 block, so the cells are one texel wide by default,
+ * and a ray only visits the cells it passes through, from near to far.
+ * The cost of a ray is bounded by the grid size instead of the triangle count.<br/>
+ * The primitives of each cell are stored in one flat array, so a built grid can be shared by any number of threads without locking.
+ */
+public final class VoxelGrid {
+    /**
+     * The cell size of block models, one texel of a 16x16 block face.
+     */
+    public static final float TEXEL_SIZE = 1f / 16;
+    /**
+     * The cells of a grid are at most this many, larger scenes get coarser cells.
+     */
+    public static final int MAX_CELLS = 1 << 18;
+    /**
+     * Triangle boxes are padded, so that triangles on a cell face are in the cells on both sides of it.
+     */
+    private static final float TRIANGLE_BOUNDS_PADDING = 1e-4f;
+
+    private final float originX;
+    private final float originY;
+    private final float originZ;
+    private final float cellSize;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    /**
+     * [cellIndex] offset in {@link #primitives}, the primitives of a cell end at the offset of the next cell.
+     * Cells are indexed by {@code x + (y + z * sizeY) * sizeX}.
+     */
+    private final int[] cellStarts;
+    private final int[] primitives;
+    private final int primitiveCount;
+
+    /**
+     * A visitor that is called for each cell the ray passes through, from near to far.
+     */
+    @FunctionalInterface
+    public interface CellVisitor {
+        /**
+         * @param grid  the grid, see {@link #primitive(int)}
+         * @param from  the index of the first primitive of the cell
+         * @param to    the index after the last primitive of the cell
+         * @param tExit the ray parameter where the ray leaves the cell
+         * @return false to stop the traversal
+         */
+        boolean visit(@NotNull VoxelGrid grid, int from, int to, float tExit);
+    }
+
+    /**
+     * @param primitiveBounds [primitiveIndex * 6] minX, minY, minZ, maxX, maxY, maxZ
+     * @param cellSize        the size of the cells, grown by powers of 2 until the grid has at most {@link #MAX_CELLS} cells
+     */
+    public VoxelGrid(float @NotNull [] primitiveBounds, float cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        var count = primitiveBounds.length / 6;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, primitiveBounds[i * 6]);
+            minY = Math.min(minY, primitiveBounds[i * 6 + 1]);
+            minZ = Math.min(minZ, primitiveBounds[i * 6 + 2]);
+            maxX = Math.max(maxX, primitiveBounds[i * 6 + 3]);
+            maxY = Math.max(maxY, primitiveBounds[i * 6 + 4]);
+            maxZ = Math.max(maxZ, primitiveBounds[i * 6 + 5]);
+        }
+        if (count == 0) {
+            minX = minY = minZ = maxX = maxY = maxZ = 0;
+        }
+        while (cells(minX, maxX, cellSize) * cells(minY, maxY, cellSize) * cells(minZ, maxZ, cellSize) > MAX_CELLS) {
+            cellSize *= 2;
+        }
+        this.cellSize = cellSize;
+        this.originX = (float) Math.floor(minX / cellSize) * cellSize;
+        this.originY = (float) Math.floor(minY / cellSize) * cellSize;
+        this.originZ = (float) Math.floor(minZ / cellSize) * cellSize;
+        this.sizeX = (int) cells(minX, maxX, cellSize);
+        this.sizeY = (int) cells(minY, maxY, cellSize);
+        this.sizeZ = (int) cells(minZ, maxZ, cellSize);
+        this.primitiveCount = count;
+        // count the primitives of each cell, then fill them in primitive order
+        var starts = new int[sizeX * sizeY * sizeZ + 1];
+        var cellRanges = new int[count * 6];
+        for (int i = 0; i < count; i++) {
+            cellRanges[i * 6] = cellOf(primitiveBounds[i * 6], originX, sizeX);
+            cellRanges[i * 6 + 1] = cellOf(primitiveBounds[i * 6 + 1], originY, sizeY);
+            cellRanges[i * 6 + 2] = cellOf(primitiveBounds[i * 6 + 2], originZ, sizeZ);
+            cellRanges[i * 6 + 3] = cellOf(primitiveBounds[i * 6 + 3], originX, sizeX);
+            cellRanges[i * 6 + 4] = cellOf(primitiveBounds[i * 6 + 4], originY, sizeY);
+            cellRanges[i * 6 + 5] = cellOf(primitiveBounds[i * 6 + 5], originZ, sizeZ);
+            forEachCell(cellRanges, i, cell -> starts[cell + 1]++);
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        var filled = new int[starts.length - 1];
+        var cellPrimitives = new int[starts[starts.length - 1]];
+        for (int i = 0; i < count; i++) {
+            var primitive = i;
+            forEachCell(cellRanges, i, cell -> cellPrimitives[starts[cell] + filled[cell]++] = primitive);
+        }
+        this.cellStarts = starts;
+        this.primitives = cellPrimitives;
+    }
+
+    /**
+     * Build a grid of {@link #TEXEL_SIZE} cells over the given triangles.
+     *
+     * @return the grid, or null if any of the triangles is not axis-aligned, the cells of a sloped triangle are mostly empty space
+     */
+    public static @Nullable VoxelGrid ofTriangles(@NotNull Triangle @NotNull [] triangles) {
+        var bounds = new float[triangles.length * 6];
+        for (int i = 0; i < triangles.length; i++) {
+            var mat = triangles[i].posMat();
+            var axisAligned = (mat.m00 == mat.m10 && mat.m00 == mat.m20)
+                    || (mat.m01 == mat.m11 && mat.m01 == mat.m21)
+                    || (mat.m02 == mat.m12 && mat.m02 == mat.m22);
+            if (!axisAligned) {
+                return null;
+            }
+            bounds[i * 6] = Math.min(mat.m00, Math.min(mat.m10, mat.m20)) - TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 1] = Math.min(mat.m01, Math.min(mat.m11, mat.m21)) - TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 2] = Math.min(mat.m02, Math.min(mat.m12, mat.m22)) - TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 3] = Math.max(mat.m00, Math.max(mat.m10, mat.m20)) + TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 4] = Math.max(mat.m01, Math.max(mat.m11, mat.m21)) + TRIANGLE_BOUNDS_PADDING;
+            bounds[i * 6 + 5] = Math.max(mat.m02, Math.max(mat.m12, mat.m22)) + TRIANGLE_BOUNDS_PADDING;
+        }
+        return new VoxelGrid(bounds, TEXEL_SIZE);
+    }
+
+    private static long cells(float min, float max, float cellSize) {
+        return Math.max(1, (long) Math.ceil(max / cellSize) - (long) Math.floor(min / cellSize));
+    }
+
+    private int cellOf(float coordinate, float origin, int size) {
+        return Math.max(0, Math.min(size - 1, (int) Math.floor((coordinate - origin) / cellSize)));
+    }
+
+    private void forEachCell(int[] cellRanges, int primitive, IntConsumer action) {
+        var offset = primitive * 6;
+        for (int z = cellRanges[offset + 2]; z <= cellRanges[offset + 5]; z++) {
+            for (int y = cellRanges[offset + 1]; y <= cellRanges[offset + 4]; y++) {
+                for (int x = cellRanges[offset]; x <= cellRanges[offset + 3]; x++) {
+                    action.accept(x + (y + z * sizeY) * sizeX);
+                }
+            }
+        }
+    }
+
+    public float cellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return the number of cells, the product of the cells along the axes
+     */
+    public int cellCount() {
+        return sizeX * sizeY * sizeZ;
+    }
+
+    public int primitiveCount() {
+        return primitiveCount;
+    }
+
+    /**
+     * @param index an index in [from, to) of {@link CellVisitor#visit}
+     * @return the primitive at the index
+     */
+    public int primitive(int index) {
+        return primitives[index];
+    }
+
+    /**
+     * Visit the cells the ray passes through in [tMin, tMax], from near to far.
+     * A primitive is in every cell its bounding box overlaps, so it can be visited more than once.
+     *
+     * @return true if the traversal passed all the cells, false if the visitor stopped it
+     */
+    public boolean traverse(@NotNull Vector3f pos, @NotNull Vector3f direction, float tMin, float tMax, @NotNull CellVisitor visitor) {
+        if (primitiveCount == 0) {
+            return true;
+        }
+        var ox = pos.x;
+        var oy = pos.y;
+        var oz = pos.z;
+        var dx = direction.x;
+        var dy = direction.y;
+        var dz = direction.z;
+        // clip the ray to the grid box
+        var invX = 1f / dx;
+        var invY = 1f / dy;
+        var invZ = 1f / dz;
+        if (Float.isInfinite(invX)) {
+            if (ox < originX || ox > originX + sizeX * cellSize) return true;
+        } else {
+            var t1 = (originX - ox) * invX;
+            var t2 = (originX + sizeX * cellSize - ox) * invX;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (Float.isInfinite(invY)) {
+            if (oy < originY || oy > originY + sizeY * cellSize) return true;
+        } else {
+            var t1 = (originY - oy) * invY;
+            var t2 = (originY + sizeY * cellSize - oy) * invY;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (Float.isInfinite(invZ)) {
+            if (oz < originZ || oz > originZ + sizeZ * cellSize) return true;
+        } else {
+            var t1 = (originZ - oz) * invZ;
+            var t2 = (originZ + sizeZ * cellSize - oz) * invZ;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (!(tMin <= tMax)) {
+            return true;
+        }
+        // the cell of the entry point, and the ray parameters of the next cell faces along each axis
+        var x = cellOf(ox + dx * tMin, originX, sizeX);
+        var y = cellOf(oy + dy * tMin, originY, sizeY);
+        var z = cellOf(oz + dz * tMin, originZ, sizeZ);
+        var stepX = dx > 0 ? 1 : -1;
+        var stepY = dy > 0 ? 1 : -1;
+        var stepZ = dz > 0 ? 1 : -1;
+        var deltaX = Math.abs(cellSize * invX);
+        var deltaY = Math.abs(cellSize * invY);
+        var deltaZ = Math.abs(cellSize * invZ);
+        var nextX = Float.isInfinite(invX) ? Float.POSITIVE_INFINITY : (originX + (x + (dx > 0 ? 1 : 0)) * cellSize - ox) * invX;
+        var nextY = Float.isInfinite(invY) ? Float.POSITIVE_INFINITY : (originY + (y + (dy > 0 ? 1 : 0)) * cellSize - oy) * invY;
+        var nextZ = Float.isInfinite(invZ) ? Float.POSITIVE_INFINITY : (originZ + (z + (dz > 0 ? 1 : 0)) * cellSize - oz) * invZ;
+        while (true) {
+            var cell = x + (y + z * sizeY) * sizeX;
+            var tExit = Math.min(tMax, Math.min(nextX, Math.min(nextY, nextZ)));
+            if (cellStarts[cell] != cellStarts[cell + 1] && !visitor.visit(this, cellStarts[cell], cellStarts[cell + 1], tExit)) {
+                return false;
+            }
+            if (tExit >= tMax) {
+                return true;
+            }
+            if (nextX <= nextY && nextX <= nextZ) {
+                x += stepX;
+                if (x < 0 || x >= sizeX) return true;
+                nextX += deltaX;
+            } else if (nextY <= nextZ) {
+                y += stepY;
+                if (y < 0 || y >= sizeY) return true;
+                nextY += deltaY;
+            } else {
+                z += stepZ;
+                if (z < 0 || z >= sizeZ) return true;
+                nextZ += deltaZ;
+            }
+        }
+    }
+}
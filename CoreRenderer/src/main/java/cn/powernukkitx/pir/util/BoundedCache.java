@@ -0,0 +1,182 @@
+package cn.powernukkitx.pir.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongBiFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A cache with least-recently-used eviction by the estimated size of the entries in bytes.<br/>
+ * A missing value is loaded once by the first thread asking for it, outside the lock,
+ * other threads asking for the same key wait for that load instead of loading it again,
+ * and threads asking for other keys are never blocked by it.
+ * Keys are compared by {@link Object#equals}, so arrays and records of arrays are compared by identity as before.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public final class BoundedCache<K, V> {
+    private final String name;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+    // access ordered, the eldest entry is the least recently used one
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long bytes;
+    private long maxBytes;
+
+    /**
+     * @param name     the name in the statistics
+     * @param maxBytes the cap of the total size of the entries
+     * @param weigher  the estimated size of a value in bytes, for keys that keep nothing large alive
+     */
+    public BoundedCache(@NotNull String name, long maxBytes, @NotNull ToLongFunction<? super V> weigher) {
+        this(name, maxBytes, (key, value) -> weigher.applyAsLong(value));
+    }
+
+    /**
+     * @param name     the name in the statistics
+     * @param maxBytes the cap of the total size of the entries
+     * @param weigher  the estimated size of an entry in bytes, including what its key keeps alive, e.g. a pixels array
+     */
+    public BoundedCache(@NotNull String name, long maxBytes, @NotNull ToLongBiFunction<? super K, ? super V> weigher) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get the value of the key, loading it if it is not cached.
+     *
+     * @param loader computes the value of a missing key, it must not ask this cache for the same key
+     * @return the cached or loaded value
+     */
+    public @NotNull V get(@NotNull K key, @NotNull Function<? super K, ? extends V> loader) {
+        Entry<V> entry;
+        boolean loading;
+        synchronized (this) {
+            entry = entries.get(key);
+            loading = entry == null;
+            if (loading) {
+                entry = new Entry<>();
+                entries.put(key, entry);
+            }
+        }
+        if (!loading) {
+            hits.increment();
+            // outside the lock, waits only if another thread is still loading this key
+            return join(entry.value);
+        }
+        misses.increment();
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            entry.value.completeExceptionally(e);
+            throw e;
+        }
+        entry.value.complete(value);
+        synchronized (this) {
+            // it may have been removed by clear() while loading
+            if (entries.get(key) == entry) {
+                entry.weight = weigher.applyAsLong(key, value);
+                bytes += entry.weight;
+                evict();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Change the cap of the total size of the values, evicting the least recently used values above it.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Remove all the values, the statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized @NotNull Stats stats() {
+        return new Stats(name, hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes, maxBytes);
+    }
+
+    private void evict() {
+        var iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            var entry = iterator.next();
+            // the values still loading are not counted yet
+            if (entry.weight >= 0) {
+                iterator.remove();
+                bytes -= entry.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> value) {
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> value = new CompletableFuture<>();
+        // -1 while loading
+        long weight = -1;
+    }
+
+    /**
+     * The statistics of a cache.
+     *
+     * @param hits      the number of lookups that found the key, including the ones waiting for a load
+     * @param misses    the number of loads
+     * @param evictions the number of values evicted for the cap
+     * @param entries   the number of cached values
+     * @param bytes     the estimated total size of the cached entries
+     * @param maxBytes  the cap of bytes
+     */
+    public record Stats(
+            @NotNull String name,
+            long hits,
+            long misses,
+            long evictions,
+            int entries,
+            long bytes,
+            long maxBytes
+    ) {
+        public double hitRate() {
+            var lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d entries, %.1f/%.1f MiB, hit rate %.1f%% (%d hits, %d misses), %d evictions",
+                    name, entries, bytes / 1048576.0, maxBytes / 1048576.0, hitRate() * 100, hits, misses, evictions);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package cn.powernukkitx.pir.util;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector4f;
+
+/**
+ * Composites the layers hit by one ray from front to back without allocating a color per layer.<br/>
+ * It is the same as {@link ColorUtil#combineRefractionColor} on {@link ColorUtil#toColorVectorFloat(int, Vector4f)} colors,
+ * so the result is exactly the color composited with Vector4f, and {@link #toInt(int)} is exactly {@link ColorUtil#toInt(Vector4f)} of it.
+ * One instance is reused for all the rays traced by a thread.
+ */
+public final class ColorCompositor {
+    private boolean empty = true;
+    private float r;
+    private float g;
+    private float b;
+    private float a;
+
+    public void reset() {
+        empty = true;
+    }
+
+    /**
+     * @return true if no layer has been added since the last {@link #reset()}
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return true if the layers behind cannot change the color any more
+     */
+    public boolean isOpaque() {
+        return !empty && a >= 1;
+    }
+
+    /**
+     * Add a layer behind the current color.
+     *
+     * @param color the ARGB color of the layer
+     */
+    public void add(int color) {
+        var layerR = ((color >> 16) & 0xFF) / 255f;
+        var layerG = ((color >> 8) & 0xFF) / 255f;
+        var layerB = (color & 0xFF) / 255f;
+        var layerA = ((color >> 24) & 0xFF) / 255f;
+        // the same branches as ColorUtil#combineRefractionColor
+        if (empty || a == 0) {
+            r = layerR;
+            g = layerG;
+            b = layerB;
+            a = layerA;
+            empty = false;
+        } else if (a < 1) {
+            if (layerA == 1) {
+                a = 1;
+            }
+            r = r * a + layerR * layerA * (1 - a);
+            g = g * a + layerG * layerA * (1 - a);
+            b = b * a + layerB * layerA * (1 - a);
+            a = a + layerA * (1 - a);
+        }
+    }
+
+    /**
+     * @return the composited color, or defaultColor itself if there is no layer
+     */
+    @Contract(pure = true)
+    public @NotNull Vector4f toColorVectorFloat(@NotNull Vector4f defaultColor) {
+        return empty ? defaultColor : new Vector4f(r, g, b, a);
+    }
+
+    /**
+     * @return the composited color in ARGB, or defaultColor if there is no layer
+     */
+    @Contract(pure = true)
+    public int toInt(int defaultColor) {
+        return empty ? defaultColor : ColorUtil.toInt(r, g, b, a);
+    }
+}
@@ -161,6 +161,16 @@ public final class ColorUtil {
         setLightIntensityInHSB(colorVectorInRGBA, lightIntensity, new float[3]);
     }
 
+    /**
+     * The same as {@link #setLightIntensityInHSB(Vector4f, float, float[])} on an ARGB color, the alpha is kept.
+     */
+    @Contract(pure = true)
+    public static int setLightIntensityInHSB(int color, float lightIntensity, float[] hsbTmpBuffer) {
+        float[] hsb = Color.RGBtoHSB((color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF, hsbTmpBuffer);
+        hsb[2] = Math.min(1, hsb[2] * lightIntensity * 2);
+        return (color & 0xFF000000) | (Color.HSBtoRGB(hsb[0], hsb[1], hsb[2]) & 0xFFFFFF);
+    }
+
     public static void setLightIntensityInHSB(@NotNull Vector4f colorVectorInRGBA, float lightIntensity, float[] hsbTmpBuffer) {
         float[] hsb = Color.RGBtoHSB((int) (colorVectorInRGBA.x * 255 + 0.5f), (int) (colorVectorInRGBA.y * 255 + 0.5f), (int) (colorVectorInRGBA.z * 255 + 0.5f), hsbTmpBuffer);
         hsb[2] = Math.min(1, hsb[2] * lightIntensity * 2);
@@ -8,10 +8,11 @@ import org.joml.Vector2i;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public final class ImageUtil {
     private ImageUtil() {
@@ -20,33 +21,123 @@ public final class ImageUtil {
 
     public static final Vector2i FALLBACK_TEXTURE_SIZE = new Vector2i(1, 1);
     public static final int[] FALLBACK_TEXTURE = new int[]{0x80808080};
+    /**
+     * The system property to set the cap of each cache in bytes, 64 MiB by default.
+     */
+    public static final String CACHE_MAX_BYTES_PROPERTY = "pir.imageCache.maxBytes";
+    private static final long DEFAULT_MAX_BYTES = Long.getLong(CACHE_MAX_BYTES_PROPERTY, 64L << 20);
+    // all the caches below, bounded so that repeated renders in a long-lived process do not keep every texture
+    private static final List<BoundedCache<?, ?>> CACHES = new CopyOnWriteArrayList<>();
 
-    private static final ConcurrentHashMap<BufferedImage, int[]> PIXEL_CACHE = new ConcurrentHashMap<>();
+    private static final BoundedCache<BufferedImage, int[]> PIXEL_CACHE = register(new BoundedCache<>("pixels", DEFAULT_MAX_BYTES,
+            // the image key holds a raster about as large as the pixels
+            (image, pixels) -> 2 * weight(pixels)));
+
+    /**
+     * The pixels of a texture and its size, compared by content.
+     */
+    private record ContentKey(int[] pixels, int width, int height, int hash) {
+        ContentKey(int[] pixels, int width, int height) {
+            this(pixels, width, height, 31 * (31 * Arrays.hashCode(pixels) + width) + height);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof ContentKey key && hash == key.hash && width == key.width && height == key.height
+                    && Arrays.equals(pixels, key.pixels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final BoundedCache<ContentKey, int[]> INTERN_CACHE = register(new BoundedCache<>("intern", DEFAULT_MAX_BYTES,
+            // the key holds the same array as the value
+            (key, pixels) -> weight(pixels)));
+
+    /**
+     * Get the one array of the pixels of the same content and size.<br/>
+     * The other caches are keyed by the pixels array, so the textures interned are derived only once per content,
+     * even if they come from different images, paths or resource packs.
+     * The pixels of {@link #getPixels}, {@link #slice} and the transposed and mirrored textures are interned,
+     * so they should not be modified.
+     *
+     * @return the first array interned with the same content and size, the given one if there is none
+     */
+    @Contract(pure = true)
+    public static int @NotNull [] intern(int @NotNull [] pixels, int width, int height) {
+        return INTERN_CACHE.get(new ContentKey(pixels, width, height), key -> pixels);
+    }
 
     @Contract("null -> !null; !null -> !null")
     public static int[] getPixels(@Nullable BufferedImage image) {
         if (image == null) return FALLBACK_TEXTURE;
-        return PIXEL_CACHE.computeIfAbsent(image, img -> {
+        return PIXEL_CACHE.get(image, img -> {
             int width = img.getWidth();
             int height = img.getHeight();
             int[] pixels = new int[width * height];
             img.getRGB(0, 0, width, height, pixels, 0, width);
-            return pixels;
+            return intern(pixels, width, height);
+        });
+    }
+
+    /**
+     * How much of a texture lets the layers behind it show through.
+     */
+    public enum Opacity {
+        /**
+         * Every texel has alpha 0, the texture is never seen.
+         */
+        TRANSPARENT,
+        /**
+         * Every texel has alpha 255, nothing behind the texture is seen.
+         */
+        OPAQUE,
+        /**
+         * Anything else.
+         */
+        MIXED
+    }
+
+    private static final BoundedCache<int[], Opacity> OPACITY_CACHE = register(new BoundedCache<>("opacity", DEFAULT_MAX_BYTES,
+            (pixels, opacity) -> weight(pixels)));
+
+    /**
+     * Classify the texture by the alpha of its texels, the result is cached by the pixels array.
+     * An empty texture is transparent.
+     */
+    @Contract(pure = true)
+    public static @NotNull Opacity opacity(int @NotNull [] pixels) {
+        return OPACITY_CACHE.get(pixels, p -> {
+            var transparent = true;
+            var opaque = true;
+            for (var pixel : p) {
+                var alpha = pixel >>> 24;
+                transparent &= alpha == 0;
+                opaque &= alpha == 0xFF;
+                if (!transparent && !opaque) {
+                    return Opacity.MIXED;
+                }
+            }
+            return transparent ? Opacity.TRANSPARENT : Opacity.OPAQUE;
         });
     }
 
-    private static final ConcurrentHashMap<int[], int[]> TRANSPOSE_CACHE = new ConcurrentHashMap<>();
+    private static final BoundedCache<int[], int[]> TRANSPOSE_CACHE = register(new BoundedCache<>("transpose", DEFAULT_MAX_BYTES,
+            (pixels, result) -> weight(pixels, result)));
 
     @Contract(pure = true)
     public static int @NotNull [] transpose(int[] pixels, int width, int height) {
-        return TRANSPOSE_CACHE.computeIfAbsent(pixels, p -> {
+        return TRANSPOSE_CACHE.get(pixels, p -> {
             int[] result = new int[pixels.length];
             for (int i = 0; i < width; i++) {
                 for (int j = 0; j < height; j++) {
                     result[i * height + j] = pixels[j * width + i];
                 }
             }
-            return result;
+            return intern(result, height, width);
         });
     }
 
@@ -61,18 +152,19 @@ public final class ImageUtil {
         return new Vector2i(image.getWidth(), image.getHeight());
     }
 
-    private static final ConcurrentHashMap<int[], int[]> CENTRAL_SYMMETRY_CACHE = new ConcurrentHashMap<>();
+    private static final BoundedCache<int[], int[]> CENTRAL_SYMMETRY_CACHE = register(new BoundedCache<>("centralSymmetry", DEFAULT_MAX_BYTES,
+            (pixels, result) -> weight(pixels, result)));
 
     @Contract(pure = true)
     public static int @NotNull [] centralSymmetry(int[] pixels, int width, int height) {
-        return CENTRAL_SYMMETRY_CACHE.computeIfAbsent(pixels, p -> {
+        return CENTRAL_SYMMETRY_CACHE.get(pixels, p -> {
             int[] result = new int[pixels.length];
             for (int i = 0; i < width; i++) {
                 for (int j = 0; j < height; j++) {
                     result[i * height + j] = pixels[(width - i - 1) * height + (height - j - 1)];
                 }
             }
-            return result;
+            return intern(result, width, height);
         });
     }
 
@@ -81,18 +173,19 @@ public final class ImageUtil {
         return centralSymmetry(pixels, size.x, size.y);
     }
 
-    private static final ConcurrentHashMap<int[], int[]> LEFT_RIGHT_MIRROR_CACHE = new ConcurrentHashMap<>();
+    private static final BoundedCache<int[], int[]> LEFT_RIGHT_MIRROR_CACHE = register(new BoundedCache<>("leftRightMirror", DEFAULT_MAX_BYTES,
+            (pixels, result) -> weight(pixels, result)));
 
     @Contract(pure = true)
     public static int @NotNull [] leftRightMirror(int[] pixels, int width, int height) {
-        return LEFT_RIGHT_MIRROR_CACHE.computeIfAbsent(pixels, p -> {
+        return LEFT_RIGHT_MIRROR_CACHE.get(pixels, p -> {
             int[] result = new int[pixels.length];
             for (int i = 0; i < width; i++) {
                 for (int j = 0; j < height; j++) {
                     result[i + j * width] = pixels[(width - i - 1) + j * width];
                 }
             }
-            return result;
+            return intern(result, width, height);
         });
     }
 
@@ -101,18 +194,19 @@ public final class ImageUtil {
         return leftRightMirror(pixels, size.x, size.y);
     }
 
-    private static final ConcurrentHashMap<int[], int[]> TOP_BOTTOM_MIRROR_CACHE = new ConcurrentHashMap<>();
+    private static final BoundedCache<int[], int[]> TOP_BOTTOM_MIRROR_CACHE = register(new BoundedCache<>("topBottomMirror", DEFAULT_MAX_BYTES,
+            (pixels, result) -> weight(pixels, result)));
 
     @Contract(pure = true)
     public static int @NotNull [] topBottomMirror(int[] pixels, int width, int height) {
-        return TOP_BOTTOM_MIRROR_CACHE.computeIfAbsent(pixels, p -> {
+        return TOP_BOTTOM_MIRROR_CACHE.get(pixels, p -> {
             int[] result = new int[pixels.length];
             for (int i = 0; i < width; i++) {
                 for (int j = 0; j < height; j++) {
                     result[i + j * width] = pixels[i + (height - j - 1) * width];
                 }
             }
-            return result;
+            return intern(result, width, height);
         });
     }
 
@@ -130,14 +224,15 @@ public final class ImageUtil {
     ) {
     }
 
-    private static final ConcurrentHashMap<SliceCacheKey, int[]> SLICE_CACHE = new ConcurrentHashMap<>();
+    private static final BoundedCache<SliceCacheKey, int[]> SLICE_CACHE = register(new BoundedCache<>("slice", DEFAULT_MAX_BYTES,
+            (key, slice) -> weight(key.pixels(), slice)));
 
     public static int @NotNull [] slice(@NotNull BufferedImage texture, int x, int y, int w, int h) {
         return slice(getPixels(texture), texture.getWidth(), texture.getHeight(), x, y, w, h);
     }
 
     public static int @NotNull [] slice(int[] pixels, int width, int height, int x, int y, int w, int h) {
-        return SLICE_CACHE.computeIfAbsent(new SliceCacheKey(pixels, x, y, w, h), key -> {
+        return SLICE_CACHE.get(new SliceCacheKey(pixels, x, y, w, h), key -> {
             int[] result = new int[w * h];
             for (int i = 0; i < w; i++) {
                 for (int j = 0; j < h; j++) {
@@ -148,6 +243,33 @@ public final class ImageUtil {
                     }
                 }
             }
+            return intern(result, w, h);
+        });
+    }
+
+    record LightCacheKey(
+            int[] pixels,
+            float lightIntensity
+    ) {
+    }
+
+    private static final BoundedCache<LightCacheKey, int[]> LIGHT_CACHE = register(new BoundedCache<>("light", DEFAULT_MAX_BYTES,
+            (key, lit) -> weight(key.pixels(), lit)));
+
+    /**
+     * Light every pixel as {@link ColorUtil#setLightIntensityInHSB(int, float, float[])} does.<br/>
+     * The result is cached by the pixels array and the exact light intensity,
+     * since the intensity only depends on the face normal there are only a few of them per texture,
+     * and shading a texel becomes one read of the returned array.
+     */
+    @Contract(pure = true)
+    public static int @NotNull [] light(int[] pixels, float lightIntensity) {
+        return LIGHT_CACHE.get(new LightCacheKey(pixels, lightIntensity), key -> {
+            int[] result = new int[pixels.length];
+            float[] hsbTmpBuffer = new float[3];
+            for (int i = 0; i < pixels.length; i++) {
+                result[i] = ColorUtil.setLightIntensityInHSB(pixels[i], lightIntensity, hsbTmpBuffer);
+            }
             return result;
         });
     }
@@ -157,24 +279,76 @@ public final class ImageUtil {
         return pixels;
     }
 
-    private static final ConcurrentHashMap<Path, WeakReference<BufferedImage>> IMAGE_CACHE = new ConcurrentHashMap<>();
+    private static final BoundedCache<Path, BufferedImage> IMAGE_CACHE = register(new BoundedCache<>("image", DEFAULT_MAX_BYTES,
+            // ImageIO gives null for unknown formats
+            image -> image == null ? 0 : 16 + 4L * image.getWidth() * image.getHeight()));
 
     public static @NotNull BufferedImage readImage(@NotNull Path path) {
-        var image = IMAGE_CACHE.computeIfAbsent(path, p -> {
+        return IMAGE_CACHE.get(path, p -> {
             try {
-                return new WeakReference<>(ImageIO.read(Files.newInputStream(p)));
+                return ImageIO.read(Files.newInputStream(p));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        }).get();
-        if (image == null) {
+        });
+    }
+
+    /**
+     * Read the image through the store, so it is decoded only in the first run.
+     *
+     * @see TextureStore#readImage(Path)
+     */
+    public static @NotNull BufferedImage readImage(@NotNull Path path, @NotNull TextureStore store) {
+        return IMAGE_CACHE.get(path, p -> {
             try {
-                image = ImageIO.read(Files.newInputStream(path));
+                return store.readImage(p);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            IMAGE_CACHE.put(path, new WeakReference<>(image));
+        });
+    }
+
+    /**
+     * @return the statistics of all the caches of ImageUtil
+     */
+    public static @NotNull List<BoundedCache.Stats> cacheStats() {
+        return CACHES.stream().map(BoundedCache::stats).toList();
+    }
+
+    /**
+     * Change the cap of each cache of ImageUtil, evicting the least recently used values above it.
+     *
+     * @param maxBytes the cap of the estimated size of the values of one cache
+     */
+    public static void setCacheMaxBytes(long maxBytes) {
+        for (var cache : CACHES) {
+            cache.setMaxBytes(maxBytes);
+        }
+    }
+
+    /**
+     * Remove all the cached values of ImageUtil.
+     */
+    public static void clearCaches() {
+        for (var cache : CACHES) {
+            cache.clear();
         }
-        return image;
+    }
+
+    private static <K, V> BoundedCache<K, V> register(BoundedCache<K, V> cache) {
+        CACHES.add(cache);
+        return cache;
+    }
+
+    private static long weight(int[] pixels) {
+        return 16 + 4L * pixels.length;
+    }
+
+    /**
+     * The weight of an entry whose key keeps the source pixels alive, so a cap bounds the sources too.
+     * Arrays shared between entries or caches are counted by each of them, which only makes the cap stricter.
+     */
+    private static long weight(int[] source, int[] result) {
+        return weight(source) + weight(result);
     }
 }
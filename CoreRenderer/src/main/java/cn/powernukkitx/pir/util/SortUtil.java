@@ -12,14 +12,45 @@ public final class SortUtil {
         int compare(int o1, int o2);
     }
 
-    // custom primitive int sort using TimSort
+    // ranges up to this length are binary insertion sorted, longer ones are merged from them
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    // custom primitive int sort, a stable merge sort of binary insertion sorted runs
     public static void sort(int[] array, int fromIndex, int toIndex, IntComparator c) {
+        sort(array, fromIndex, toIndex, toIndex - fromIndex > INSERTION_SORT_THRESHOLD ? new int[(toIndex - fromIndex) >>> 1] : null, c);
+    }
+
+    /**
+     * The same as {@link #sort(int[], int, int, IntComparator)}, merging through the given buffer instead of a new one.
+     *
+     * @param buffer the scratch buffer, at least (toIndex - fromIndex) / 2 long, the left half of each merge is copied to its start
+     */
+    public static void sort(int[] array, int fromIndex, int toIndex, int[] buffer, IntComparator c) {
         int remaining = toIndex - fromIndex;
         if (remaining < 2) {
             return;
         }
-        int runLength = countRunAndMakeAscending(array, fromIndex, toIndex, c);
-        binarySort(array, fromIndex, toIndex, fromIndex + runLength, c);
+        if (remaining <= INSERTION_SORT_THRESHOLD) {
+            int runLength = countRunAndMakeAscending(array, fromIndex, toIndex, c);
+            binarySort(array, fromIndex, toIndex, fromIndex + runLength, c);
+            return;
+        }
+        int mid = (fromIndex + toIndex) >>> 1;
+        sort(array, fromIndex, mid, buffer, c);
+        sort(array, mid, toIndex, buffer, c);
+        if (c.compare(array[mid - 1], array[mid]) <= 0) {
+            return;
+        }
+        int leftLength = mid - fromIndex;
+        System.arraycopy(array, fromIndex, buffer, 0, leftLength);
+        int left = 0;
+        int right = mid;
+        int index = fromIndex;
+        while (left < leftLength && right < toIndex) {
+            // the left one first on ties, to keep the sort stable
+            array[index++] = c.compare(array[right], buffer[left]) < 0 ? array[right++] : buffer[left++];
+        }
+        System.arraycopy(buffer, left, array, index, leftLength - left);
     }
 
     private static void swap(int @NotNull [] array, int x, int y) {
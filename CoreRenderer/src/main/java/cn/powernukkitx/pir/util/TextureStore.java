@@ -0,0 +1,248 @@
+package cn.powernukkitx.pir.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * A persistent store of decoded textures, one file per resource pack.<br/>
+ * The file holds the ARGB pixels of every texture read through it, indexed by the in-pack path,
+ * and the checksum of the pack they were decoded from. It is memory-mapped when opened,
+ * so a texture read again in a later run is one copy from the mapped file instead of a PNG decode.
+ * A file of another pack checksum or format is ignored and rewritten on {@link #save()}.<br/>
+ * File layout, little-endian: magic, version, pack checksum, entry count,
+ * then per entry the UTF-8 path length, path, width, height and the int offset of its pixels, then the pixels.
+ */
+public final class TextureStore {
+    private static final System.Logger LOGGER = System.getLogger(TextureStore.class.getName());
+    private static final int MAGIC = 0x54524950; // "PIRT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    private static final Mapping UNMAPPED = new Mapping(null, Map.of());
+
+    private final Path file;
+    private final long checksum;
+    // the mapped file, replaced by the new one on save
+    private volatile Mapping mapping;
+    // the textures decoded since the last save, written on save
+    private final Map<String, Entry> newEntries = new LinkedHashMap<>();
+
+    private TextureStore(Path file, long checksum, Mapping mapping) {
+        this.file = file;
+        this.checksum = checksum;
+        this.mapping = mapping;
+    }
+
+    /**
+     * Open the store file, or start an empty store if the file is missing, broken, or of another checksum.
+     *
+     * @param file     the store file
+     * @param checksum the checksum of the resource pack, see {@link #checksum(Path)}
+     */
+    public static @NotNull TextureStore open(@NotNull Path file, long checksum) {
+        if (Files.isRegularFile(file)) {
+            try {
+                var mapping = map(file, checksum);
+                if (mapping != null) {
+                    return new TextureStore(file, checksum, mapping);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Ignoring broken texture store " + file, e);
+            }
+        }
+        return new TextureStore(file, checksum, UNMAPPED);
+    }
+
+    /**
+     * @return the mapped file, or null if it is of another checksum or format
+     */
+    private static @Nullable Mapping map(@NotNull Path file, long checksum) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != checksum) {
+                return null;
+            }
+            var count = buffer.getInt();
+            var ints = buffer.duplicate().position(0).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            var entries = new HashMap<String, Entry>(count * 2);
+            for (int i = 0; i < count; i++) {
+                var key = new byte[buffer.getInt()];
+                buffer.get(key);
+                var entry = new Entry(buffer.getInt(), buffer.getInt(), buffer.getInt(), null);
+                if (entry.width < 0 || entry.height < 0 || entry.offset < 0
+                        || (long) entry.offset + (long) entry.width * entry.height > ints.limit()) {
+                    throw new IOException("Entry out of the file");
+                }
+                entries.put(new String(key, StandardCharsets.UTF_8), entry);
+            }
+            return new Mapping(ints, entries);
+        }
+    }
+
+    /**
+     * @return the CRC32C of the content of the resource pack file
+     */
+    public static long checksum(@NotNull Path pack) throws IOException {
+        var crc = new CRC32C();
+        try (InputStream input = Files.newInputStream(pack)) {
+            var buffer = new byte[1 << 16];
+            for (int read; (read = input.read(buffer)) >= 0; ) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Read the texture from the store, or decode it and add it to the store.
+     *
+     * @param path a path in the resource pack, its string form is the key of the texture
+     * @return the texture, or null if ImageIO does not know its format
+     */
+    public @Nullable BufferedImage readImage(@NotNull Path path) throws IOException {
+        var key = path.toString();
+        var mapping = this.mapping;
+        var entry = mapping.entries.get(key);
+        if (entry != null) {
+            var image = new BufferedImage(entry.width, entry.height, BufferedImage.TYPE_INT_ARGB);
+            // duplicated, so concurrent reads never share a position
+            Objects.requireNonNull(mapping.pixels).duplicate().get(entry.offset, ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+            return image;
+        }
+        BufferedImage image;
+        try (var input = Files.newInputStream(path)) {
+            image = ImageIO.read(input);
+        }
+        if (image != null) {
+            synchronized (newEntries) {
+                newEntries.put(key, new Entry(image.getWidth(), image.getHeight(), -1, ImageUtil.getPixels(image)));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Write the store file if textures were decoded since the last save.
+     * The new file replaces the old one when it is complete, and this store reads the textures from it afterwards.<br/>
+     * The old mapping is dropped before the replace, but Java unmaps it only once it is collected,
+     * so the replace may fail while it is still mapped, e.g. on Windows.
+     * The decoded textures are then kept for the next save.
+     *
+     * @throws IOException if the new file cannot be written or cannot replace the old one
+     */
+    public void save() throws IOException {
+        var mapping = this.mapping;
+        Map<String, Entry> entries;
+        synchronized (newEntries) {
+            if (newEntries.isEmpty()) {
+                return;
+            }
+            entries = new LinkedHashMap<>(mapping.entries);
+            entries.putAll(newEntries);
+        }
+        var keys = new HashMap<String, byte[]>(entries.size() * 2);
+        long indexBytes = HEADER_BYTES;
+        for (var key : entries.keySet()) {
+            var bytes = key.getBytes(StandardCharsets.UTF_8);
+            keys.put(key, bytes);
+            indexBytes += 4 + bytes.length + 12;
+        }
+        // the pixels start at an int boundary
+        var offset = (int) ((indexBytes + 3) / 4);
+        var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var index = ByteBuffer.allocate(offset * 4).order(ByteOrder.LITTLE_ENDIAN);
+            index.putInt(MAGIC).putInt(VERSION).putLong(checksum).putInt(entries.size());
+            var pixelOffset = offset;
+            for (var each : entries.entrySet()) {
+                var entry = each.getValue();
+                var key = keys.get(each.getKey());
+                index.putInt(key.length).put(key).putInt(entry.width).putInt(entry.height).putInt(pixelOffset);
+                pixelOffset += entry.width * entry.height;
+            }
+            writeFully(channel, index.clear());
+            var pixels = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (var entry : entries.values()) {
+                var source = entry.pixels != null ? IntBuffer.wrap(entry.pixels)
+                        : Objects.requireNonNull(mapping.pixels).duplicate().position(entry.offset).limit(entry.offset + entry.width * entry.height);
+                while (source.hasRemaining()) {
+                    var ints = pixels.asIntBuffer();
+                    var length = Math.min(ints.remaining(), source.remaining());
+                    ints.put(source.slice(source.position(), length));
+                    source.position(source.position() + length);
+                    writeFully(channel, pixels.clear().limit(length * 4));
+                    pixels.clear();
+                }
+            }
+        }
+        // the textures are decoded again while no file is mapped
+        this.mapping = UNMAPPED;
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            this.mapping = mapping;
+            Files.deleteIfExists(tmp);
+            throw new IOException("Cannot replace " + file + ", the new textures are kept for the next save", e);
+        }
+        var saved = map(file, checksum);
+        if (saved == null) {
+            throw new IOException("The saved texture store " + file + " is broken");
+        }
+        synchronized (newEntries) {
+            // the ones decoded while saving are kept
+            newEntries.keySet().removeAll(entries.keySet());
+            this.mapping = saved;
+        }
+    }
+
+    /**
+     * @return the number of textures in the store, the ones read from the file and the ones decoded since
+     */
+    public int size() {
+        synchronized (newEntries) {
+            return mapping.entries.size() + newEntries.size();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @param offset the int offset of the pixels in the file, -1 for a texture not written yet
+     * @param pixels the pixels of a texture not written yet
+     */
+    private record Entry(int width, int height, int offset, int @Nullable [] pixels) {
+    }
+
+    /**
+     * @param pixels  the pixels of the mapped file, null if there is no file
+     * @param entries the textures in the file
+     */
+    private record Mapping(@Nullable IntBuffer pixels, @NotNull Map<String, Entry> entries) {
+    }
+}
@@ -0,0 +1,295 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.functor.HitList;
+import cn.powernukkitx.pir.functor.PackedTriangles;
+import cn.powernukkitx.pir.functor.TriangleFunctor;
+import cn.powernukkitx.pir.object.Ray;
+import cn.powernukkitx.pir.object.geometry.Shape;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import cn.powernukkitx.pir.object.light.Light;
+import cn.powernukkitx.pir.scene.BoundingVolumeHierarchy;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.TextureAtlas;
+import cn.powernukkitx.pir.util.ColorCompositor;
+import cn.powernukkitx.pir.util.ColorUtil;
+import cn.powernukkitx.pir.util.ImageUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+/**
+ * BVHRayTraceWorker walks the {@link BoundingVolumeHierarchy} of a {@link FrozenScene},
+ * so each ray only tests the triangles whose bounding boxes it passes through.<br/>
+ * With early ray termination, the hits of a ray are found one by one from front to back,
+ * and the ray stops once the composited color is opaque, the layers behind cannot change it.<br/>
+ * It supports ONLY Triangles, and rays only hit triangles in front of their origin.
+ */
+public class BVHRayTraceWorker implements RayTraceWorker {
+    // the slots of the scratch buffers in a RenderContext
+    static final int HITS_SLOT = 0;
+    static final int STACK_SLOT = 0;
+
+    public final boolean singleSided;
+    public final boolean earlyRayTermination;
+    public final TriangleFunctor functor;
+
+    /**
+     * @param functor the triangle functor of the rays traced by this worker
+     */
+    public BVHRayTraceWorker(boolean singleSided, boolean earlyRayTermination, @NotNull TriangleFunctor functor) {
+        this.singleSided = singleSided;
+        this.earlyRayTermination = earlyRayTermination;
+        this.functor = functor;
+    }
+
+    public BVHRayTraceWorker(boolean singleSided, boolean earlyRayTermination) {
+        this(singleSided, earlyRayTermination, TriangleFunctor.current());
+    }
+
+    public BVHRayTraceWorker(boolean singleSided) {
+        this(singleSided, false);
+    }
+
+    public BVHRayTraceWorker() {
+        this(false, false);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Ray @NotNull [] rays,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        var rayPositions = new Vector3f[rays.length];
+        var rayDirections = new Vector3f[rays.length];
+        for (int i = 0; i < rays.length; i++) {
+            rayPositions[i] = rays[i].pos();
+            rayDirections[i] = rays[i].direction();
+        }
+        return rayTrace(rayPositions, rayDirections, triangles, otherShapes, lights, defaultColor);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        // no prebuilt hierarchy, build a temporary one
+        var packedTriangles = PackedTriangles.of(triangles);
+        var lightIntensities = Light.calculateIntensities(lights, packedTriangles.normalVectors());
+        var litTextures = new int[triangles.length][];
+        var textureWidths = new int[triangles.length];
+        var opaqueTextures = new boolean[triangles.length];
+        for (int i = 0; i < triangles.length; i++) {
+            litTextures[i] = ImageUtil.light(triangles[i].texture(), lightIntensities[i]);
+            textureWidths[i] = triangles[i].textureSize().x;
+            opaqueTextures[i] = ImageUtil.opacity(triangles[i].texture()) == ImageUtil.Opacity.OPAQUE;
+        }
+        var results = new Vector4f[rayPositions.length];
+        rayTrace(new RenderContext(), rayPositions, rayDirections, triangles, packedTriangles,
+                BoundingVolumeHierarchy.ofTriangles(triangles), TextureAtlas.of(litTextures, textureWidths), opaqueTextures, ColorSink.of(results, defaultColor));
+        return results;
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull FrozenScene scene) {
+        var results = new Vector4f[rayPositions.length];
+        rayTrace(new RenderContext(), rayPositions, rayDirections, scene.triangles(), scene.packedTriangles(), scene.bvh(),
+                scene.textureAtlas(), scene.opaqueTextures(), ColorSink.of(results, scene.getDefaultColor()));
+        return results;
+    }
+
+    @Override
+    public void rayTraceInto(int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        rayTraceInto(new RenderContext(), argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+    }
+
+    @Override
+    public void rayTraceInto(@NotNull RenderContext context,
+                             int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        rayTrace(context, rayPositions, rayDirections, scene.triangles(), scene.packedTriangles(), scene.bvh(), scene.textureAtlas(),
+                scene.opaqueTextures(), ColorSink.of(argbOut, offset, scanline, width, ColorUtil.toInt(scene.getDefaultColor())));
+    }
+
+    private void rayTrace(@NotNull RenderContext context,
+                          @NotNull Vector3f @NotNull [] rayPositions,
+                          @NotNull Vector3f @NotNull [] rayDirections,
+                          @NotNull Triangle @NotNull [] triangles,
+                          @NotNull PackedTriangles packedTriangles,
+                          @NotNull BoundingVolumeHierarchy bvh,
+                          @NotNull TextureAtlas textureAtlas,
+                          boolean @NotNull [] opaqueTextures,
+                          @NotNull ColorSink sink) {
+        var hits = context.hitList(HITS_SLOT);
+        var collector = new HitCollector(functor, packedTriangles, singleSided, hits, opaqueTextures);
+        var stack = context.ints(STACK_SLOT, BoundingVolumeHierarchy.MAX_DEPTH);
+        var uv = new Vector2i();
+        var color = new ColorCompositor();
+        if (earlyRayTermination) {
+            var nearest = new NearestHitCollector(functor, packedTriangles, singleSided);
+            for (int i = 0, raysLength = rayPositions.length; i < raysLength; i++) {
+                nearest.reset(rayPositions[i], rayDirections[i]);
+                color.reset();
+                while (nearest.next(bvh, stack)) {
+                    var triangleId = nearest.id;
+                    var textureSize = triangles[triangleId].textureSize();
+                    functor.getTextureUV(packedTriangles, triangleId, nearest.u, nearest.v, textureSize, uv);
+                    color.add(textureAtlas.texel(triangleId, uv.x, uv.y));
+                    // an opaque color is never changed by the layers behind
+                    if (color.isOpaque()) {
+                        break;
+                    }
+                }
+                sink.write(i, color);
+            }
+            return;
+        }
+        for (int i = 0, raysLength = rayPositions.length; i < raysLength; i++) {
+            hits.clear();
+            collector.reset(rayPositions[i], rayDirections[i]);
+            bvh.traverse(rayPositions[i], rayDirections[i], 0, Float.POSITIVE_INFINITY, stack, collector);
+            // sort with distance, ties are ordered by triangle index, the same as a brute force traversal
+            hits.sortByDistance();
+            // calculate the color, if no intersections, the sink uses the default color
+            color.reset();
+            for (int j = 0, hitCount = hits.size(); j < hitCount; j++) {
+                var triangleId = hits.id(j);
+                var textureSize = triangles[triangleId].textureSize();
+                functor.getTextureUV(packedTriangles, triangleId, hits.u(j), hits.v(j), textureSize, uv);
+                color.add(textureAtlas.texel(triangleId, uv.x, uv.y));
+                // the hits behind an opaque triangle may be missing, but they can never change the color
+                if (color.isOpaque()) {
+                    break;
+                }
+            }
+            sink.write(i, color);
+        }
+    }
+
+    /**
+     * Collects the triangle hits of one ray during a traversal.
+     * If opaqueTextures is given, the traversal range ends at the nearest hit on an opaque triangle,
+     * the hits at the same distance are still collected, as the boxes are padded.
+     */
+    static final class HitCollector implements BoundingVolumeHierarchy.PrimitiveVisitor {
+        private final TriangleFunctor functor;
+        private final PackedTriangles triangles;
+        private final boolean singleSided;
+        private final HitList hits;
+        private final boolean @Nullable [] opaqueTextures;
+        private Vector3f pos;
+        private Vector3f direction;
+
+        HitCollector(TriangleFunctor functor, PackedTriangles triangles, boolean singleSided, HitList hits,
+                     boolean @Nullable [] opaqueTextures) {
+            this.functor = functor;
+            this.triangles = triangles;
+            this.singleSided = singleSided;
+            this.hits = hits;
+            this.opaqueTextures = opaqueTextures;
+        }
+
+        void reset(Vector3f pos, Vector3f direction) {
+            this.pos = pos;
+            this.direction = direction;
+        }
+
+        @Override
+        public float visit(int primitive, float tMax) {
+            var hit = singleSided
+                    ? functor.intersectsSingleSided(triangles, primitive, pos, direction, hits)
+                    : functor.intersects(triangles, primitive, pos, direction, hits);
+            if (hit && opaqueTextures != null && opaqueTextures[primitive]) {
+                // nothing behind an opaque hit is visible, the nodes at its distance are still visited for the ties
+                return Math.min(tMax, hits.distance(hits.size() - 1));
+            }
+            return tMax;
+        }
+    }
+
+    /**
+     * Finds the hits of one ray one by one, in the same order as {@link HitList#sortByDistance()}.<br/>
+     * Each call of {@link #next} finds the nearest hit after the previous one, ordered by distance then triangle index.
+     */
+    private static final class NearestHitCollector implements BoundingVolumeHierarchy.PrimitiveVisitor {
+        private final TriangleFunctor functor;
+        private final PackedTriangles triangles;
+        private final boolean singleSided;
+        private final HitList probe = new HitList(2);
+        private Vector3f pos;
+        private Vector3f direction;
+        private float previousDistance;
+        private int previousId;
+        float distance;
+        int id;
+        float u;
+        float v;
+
+        NearestHitCollector(TriangleFunctor functor, PackedTriangles triangles, boolean singleSided) {
+            this.functor = functor;
+            this.triangles = triangles;
+            this.singleSided = singleSided;
+        }
+
+        void reset(Vector3f pos, Vector3f direction) {
+            this.pos = pos;
+            this.direction = direction;
+            // the functors only report hits in front of the origin
+            this.previousDistance = 0;
+            this.previousId = -1;
+        }
+
+        /**
+         * @return true if there is another hit, it is stored in {@link #distance}, {@link #id}, {@link #u} and {@link #v}
+         */
+        boolean next(BoundingVolumeHierarchy bvh, int[] stack) {
+            distance = Float.POSITIVE_INFINITY;
+            id = -1;
+            bvh.traverse(pos, direction, previousDistance, Float.POSITIVE_INFINITY, stack, this);
+            if (id < 0) {
+                return false;
+            }
+            previousDistance = distance;
+            previousId = id;
+            return true;
+        }
+
+        @Override
+        public float visit(int primitive, float tMax) {
+            probe.clear();
+            var hit = singleSided
+                    ? functor.intersectsSingleSided(triangles, primitive, pos, direction, probe)
+                    : functor.intersects(triangles, primitive, pos, direction, probe);
+            if (!hit) {
+                return tMax;
+            }
+            var hitDistance = probe.distance(0);
+            // skip the hits that are already returned
+            var compared = Float.compare(hitDistance, previousDistance);
+            if (compared < 0 || (compared == 0 && primitive <= previousId)) {
+                return tMax;
+            }
+            compared = Float.compare(hitDistance, distance);
+            if (compared < 0 || (compared == 0 && primitive < id)) {
+                distance = hitDistance;
+                id = primitive;
+                u = probe.u(0);
+                v = probe.v(0);
+            }
+            // nodes farther than the nearest hit cannot contain a nearer one
+            return Math.min(tMax, distance);
+        }
+    }
+}
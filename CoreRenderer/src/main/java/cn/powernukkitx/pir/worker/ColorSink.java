@@ -0,0 +1,26 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.util.ColorCompositor;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector4f;
+
+/**
+ * Where a worker writes the composited color of each ray, Vector4f colors or ARGB pixels.
+ */
+interface ColorSink {
+    void write(int ray, @NotNull ColorCompositor color);
+
+    @Contract("_, _ -> new")
+    static @NotNull ColorSink of(@NotNull Vector4f @NotNull [] results, @NotNull Vector4f defaultColor) {
+        return (ray, color) -> results[ray] = color.toColorVectorFloat(defaultColor);
+    }
+
+    /**
+     * @see RayTraceWorker#rayTraceInto
+     */
+    @Contract("_, _, _, _, _ -> new")
+    static @NotNull ColorSink of(int @NotNull [] argbOut, int offset, int scanline, int width, int defaultColor) {
+        return (ray, color) -> argbOut[offset + ray / width * scanline + ray % width] = color.toInt(defaultColor);
+    }
+}
@@ -0,0 +1,163 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.functor.CuboidFunctor;
+import cn.powernukkitx.pir.functor.HitList;
+import cn.powernukkitx.pir.functor.PackedCuboids;
+import cn.powernukkitx.pir.object.Ray;
+import cn.powernukkitx.pir.object.geometry.Shape;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import cn.powernukkitx.pir.object.light.Light;
+import cn.powernukkitx.pir.scene.BoundingVolumeHierarchy;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.TextureAtlas;
+import cn.powernukkitx.pir.util.ColorCompositor;
+import cn.powernukkitx.pir.util.ColorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+/**
+ * CuboidRayTraceWorker traces the {@link FrozenScene#cuboids()} of a scene as boxes,
+ * walking the {@link FrozenScene#cuboidBvh()} and testing each box with one slab test of {@link CuboidFunctor},
+ * so the cuboids are never expanded into triangles and the face textures are never mirrored.<br/>
+ * Scenes with triangles that are not faces of cuboids are traced by {@link BVHRayTraceWorker} instead.
+ * The output is the same as BVHRayTraceWorker, except on the face diagonals and box edges, where the two triangles
+ * of a face are hit at once, and on texel borders, where the face coordinates are rounded differently.
+ * It supports ONLY Cuboids and Cubes, and rays only hit faces in front of their origin.
+ */
+public class CuboidRayTraceWorker implements RayTraceWorker {
+    // the slots of the scratch buffers in a RenderContext
+    private static final int HITS_SLOT = 0;
+    private static final int STACK_SLOT = 0;
+
+    public final boolean singleSided;
+    private final BVHRayTraceWorker fallback;
+
+    public CuboidRayTraceWorker(boolean singleSided) {
+        this.singleSided = singleSided;
+        this.fallback = new BVHRayTraceWorker(singleSided, true);
+    }
+
+    public CuboidRayTraceWorker() {
+        this(false);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Ray @NotNull [] rays,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        // loose triangles have no boxes
+        return fallback.rayTrace(rays, triangles, otherShapes, lights, defaultColor);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        return fallback.rayTrace(rayPositions, rayDirections, triangles, otherShapes, lights, defaultColor);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull FrozenScene scene) {
+        if (!scene.isCuboidsOnly()) {
+            return fallback.rayTrace(rayPositions, rayDirections, scene);
+        }
+        var results = new Vector4f[rayPositions.length];
+        rayTrace(new RenderContext(), rayPositions, rayDirections, scene, ColorSink.of(results, scene.getDefaultColor()));
+        return results;
+    }
+
+    @Override
+    public void rayTraceInto(int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        rayTraceInto(new RenderContext(), argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+    }
+
+    @Override
+    public void rayTraceInto(@NotNull RenderContext context,
+                             int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        if (!scene.isCuboidsOnly()) {
+            fallback.rayTraceInto(context, argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+            return;
+        }
+        rayTrace(context, rayPositions, rayDirections, scene,
+                ColorSink.of(argbOut, offset, scanline, width, ColorUtil.toInt(scene.getDefaultColor())));
+    }
+
+    private void rayTrace(@NotNull RenderContext context,
+                          @NotNull Vector3f @NotNull [] rayPositions,
+                          @NotNull Vector3f @NotNull [] rayDirections,
+                          @NotNull FrozenScene scene,
+                          @NotNull ColorSink sink) {
+        var functor = CuboidFunctor.current();
+        var cuboids = scene.packedCuboids();
+        var bvh = scene.cuboidBvh();
+        var textureAtlas = scene.cuboidTextureAtlas();
+        var hits = context.hitList(HITS_SLOT);
+        var collector = new HitCollector(functor, cuboids, singleSided, hits);
+        var stack = context.ints(STACK_SLOT, BoundingVolumeHierarchy.MAX_DEPTH);
+        var uv = new Vector2i();
+        var color = new ColorCompositor();
+        for (int i = 0, raysLength = rayPositions.length; i < raysLength; i++) {
+            hits.clear();
+            collector.reset(rayPositions[i], rayDirections[i]);
+            bvh.traverse(rayPositions[i], rayDirections[i], 0, Float.POSITIVE_INFINITY, stack, collector);
+            // sort with distance, ties are ordered by face id
+            hits.sortByDistance();
+            color.reset();
+            for (int j = 0, hitCount = hits.size(); j < hitCount; j++) {
+                var faceId = hits.id(j);
+                functor.getTextureUV(cuboids, faceId, hits.u(j), hits.v(j), uv);
+                color.add(textureAtlas.texel(faceId, uv.x, uv.y));
+                // an opaque color is never changed by the layers behind
+                if (color.isOpaque()) {
+                    break;
+                }
+            }
+            sink.write(i, color);
+        }
+    }
+
+    /**
+     * Collects all the face hits of one ray during a traversal.
+     */
+    private static final class HitCollector implements BoundingVolumeHierarchy.PrimitiveVisitor {
+        private final CuboidFunctor functor;
+        private final PackedCuboids cuboids;
+        private final boolean singleSided;
+        private final HitList hits;
+        private Vector3f pos;
+        private Vector3f direction;
+
+        HitCollector(CuboidFunctor functor, PackedCuboids cuboids, boolean singleSided, HitList hits) {
+            this.functor = functor;
+            this.cuboids = cuboids;
+            this.singleSided = singleSided;
+            this.hits = hits;
+        }
+
+        void reset(Vector3f pos, Vector3f direction) {
+            this.pos = pos;
+            this.direction = direction;
+        }
+
+        @Override
+        public float visit(int primitive, float tMax) {
+            functor.intersects(cuboids, primitive, pos, direction, singleSided, 0, hits);
+            return tMax;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.functor.TriangleFunctor;
+import cn.powernukkitx.pir.object.Ray;
+import cn.powernukkitx.pir.object.SceneObject;
+import cn.powernukkitx.pir.object.camera.RayGrid;
+import cn.powernukkitx.pir.object.geometry.Shape;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import cn.powernukkitx.pir.object.light.Light;
+import cn.powernukkitx.pir.scene.BoundingVolumeHierarchy;
+import cn.powernukkitx.pir.scene.CanonicalGeometry;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.TextureAtlas;
+import cn.powernukkitx.pir.util.BoundedCache;
+import cn.powernukkitx.pir.util.ColorCompositor;
+import cn.powernukkitx.pir.util.ColorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+/**
+ * DeferredRayTraceWorker traces a geometry once and caches, per ray, the ordered layers it hits
+ * as (triangle, texel), a G-buffer.<br/>
+ * Rendering the same geometry with the same rays again, e.g. blocks that only differ in textures or lights,
+ * only looks up the texels of the new lit textures, see {@link FrozenScene#textureAtlas()}, and composites them.
+ * The cache key is compared by content: the {@link FrozenScene#canonicalGeometry()}, independent of the order of the triangles in the scene,
+ * so scenes built from the same shapes in any order share a G-buffer, and the rays: the parameters of the {@link RayGrid} window
+ * when rendered by {@link #rayTraceGridInto}, a copy of the rays otherwise.<br/>
+ * The G-buffers are kept in a {@link BoundedCache} of at most {@code pir.gBufferCache.maxBytes} bytes, 64 MiB by default,
+ * and a missing one is traced outside its lock.<br/>
+ * The output is the same as {@link BVHRayTraceWorker}. It supports ONLY Triangles.
+ */
+public class DeferredRayTraceWorker implements RayTraceWorker {
+    private static final BoundedCache<GBufferKey, GBuffer> GBUFFER_CACHE = new BoundedCache<>("gBuffer",
+            Long.getLong("pir.gBufferCache.maxBytes", 64L << 20), DeferredRayTraceWorker::weight);
+    // the slot of the scratch buffer in a RenderContext, next to the ones of BVHRayTraceWorker
+    private static final int ORDER_SLOT = 1;
+
+    public final boolean singleSided;
+    public final TriangleFunctor functor;
+
+    /**
+     * @param functor the triangle functor of the rays traced by this worker, G-buffers are only shared with workers of the same functor class
+     */
+    public DeferredRayTraceWorker(boolean singleSided, @NotNull TriangleFunctor functor) {
+        this.singleSided = singleSided;
+        this.functor = functor;
+    }
+
+    public DeferredRayTraceWorker(boolean singleSided) {
+        this(singleSided, TriangleFunctor.current());
+    }
+
+    public DeferredRayTraceWorker() {
+        this(false);
+    }
+
+    /**
+     * @return the number of cached G-buffers
+     */
+    public static int cacheSize() {
+        return GBUFFER_CACHE.stats().entries();
+    }
+
+    public static @NotNull BoundedCache.Stats cacheStats() {
+        return GBUFFER_CACHE.stats();
+    }
+
+    /**
+     * Change the cap of the total size of the cached G-buffers.
+     */
+    public static void setCacheMaxBytes(long maxBytes) {
+        GBUFFER_CACHE.setMaxBytes(maxBytes);
+    }
+
+    public static void clearCache() {
+        GBUFFER_CACHE.clear();
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Ray @NotNull [] rays,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        var rayPositions = new Vector3f[rays.length];
+        var rayDirections = new Vector3f[rays.length];
+        for (int i = 0; i < rays.length; i++) {
+            rayPositions[i] = rays[i].pos();
+            rayDirections[i] = rays[i].direction();
+        }
+        return rayTrace(rayPositions, rayDirections, triangles, otherShapes, lights, defaultColor);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        // no frozen scene, freeze the objects into a temporary one
+        var objects = new LinkedHashSet<SceneObject>(triangles.length + lights.length);
+        objects.addAll(Arrays.asList(triangles));
+        objects.addAll(Arrays.asList(lights));
+        var results = new Vector4f[rayPositions.length];
+        rayTrace(new RenderContext(), rayPositions, rayDirections, new FrozenScene(objects), ColorSink.of(results, defaultColor));
+        return results;
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull FrozenScene scene) {
+        var results = new Vector4f[rayPositions.length];
+        rayTrace(new RenderContext(), rayPositions, rayDirections, scene, ColorSink.of(results, scene.getDefaultColor()));
+        return results;
+    }
+
+    @Override
+    public void rayTraceInto(int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        rayTraceInto(new RenderContext(), argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+    }
+
+    @Override
+    public void rayTraceInto(@NotNull RenderContext context,
+                             int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        rayTrace(context, rayPositions, rayDirections, new CopiedRays(rayPositions, rayDirections), scene,
+                ColorSink.of(argbOut, offset, scanline, width, ColorUtil.toInt(scene.getDefaultColor())));
+    }
+
+    /**
+     * The same as {@link #rayTraceInto(RenderContext, int[], int, int, int, Vector3f[], Vector3f[], FrozenScene)}
+     * for the rays of a window of a ray grid, the G-buffer is looked up by the window instead of a hash of all the rays.
+     *
+     * @param rayPositions  the positions filled by {@link RayGrid#fill} for the window
+     * @param rayDirections the directions filled by {@link RayGrid#fill} for the window
+     */
+    public void rayTraceGridInto(@NotNull RenderContext context,
+                                 int @NotNull [] argbOut, int offset, int scanline,
+                                 @NotNull RayGrid rayGrid, int startX, int startY, int width, int height,
+                                 @NotNull Vector3f @NotNull [] rayPositions,
+                                 @NotNull Vector3f @NotNull [] rayDirections,
+                                 @NotNull FrozenScene scene) {
+        if (rayPositions.length != width * height) {
+            throw new IllegalArgumentException("The rays are not a " + width + "x" + height + " window");
+        }
+        rayTrace(context, rayPositions, rayDirections, new GridRays(rayGrid, startX, startY, width, height), scene,
+                ColorSink.of(argbOut, offset, scanline, width, ColorUtil.toInt(scene.getDefaultColor())));
+    }
+
+    private void rayTrace(@NotNull RenderContext context,
+                          @NotNull Vector3f @NotNull [] rayPositions,
+                          @NotNull Vector3f @NotNull [] rayDirections,
+                          @NotNull FrozenScene scene,
+                          @NotNull ColorSink sink) {
+        rayTrace(context, rayPositions, rayDirections, new CopiedRays(rayPositions, rayDirections), scene, sink);
+    }
+
+    private void rayTrace(@NotNull RenderContext context,
+                          @NotNull Vector3f @NotNull [] rayPositions,
+                          @NotNull Vector3f @NotNull [] rayDirections,
+                          @NotNull Object rays,
+                          @NotNull FrozenScene scene,
+                          @NotNull ColorSink sink) {
+        var geometry = scene.canonicalGeometry();
+        var key = new GBufferKey(geometry, rays, singleSided, functor.getClass());
+        var gBuffer = GBUFFER_CACHE.get(key, k -> trace(context, rayPositions, rayDirections, scene, geometry.order()));
+        shade(context, gBuffer, scene.textureAtlas(), geometry.order(), sink);
+    }
+
+    /**
+     * Trace all the layers of each ray, triangles are stored by their canonical index.
+     */
+    private @NotNull GBuffer trace(@NotNull RenderContext context,
+                                   @NotNull Vector3f @NotNull [] rayPositions,
+                                   @NotNull Vector3f @NotNull [] rayDirections,
+                                   @NotNull FrozenScene scene,
+                                   int @NotNull [] canonicalOrder) {
+        var triangles = scene.triangles();
+        var packedTriangles = scene.packedTriangles();
+        var canonicalIndex = new int[triangles.length];
+        for (int i = 0; i < canonicalOrder.length; i++) {
+            canonicalIndex[canonicalOrder[i]] = i;
+        }
+        var hits = context.hitList(BVHRayTraceWorker.HITS_SLOT);
+        // all the layers are kept, the cached G-buffer is composited with other textures later
+        var collector = new BVHRayTraceWorker.HitCollector(functor, packedTriangles, singleSided, hits, null);
+        var stack = context.ints(BVHRayTraceWorker.STACK_SLOT, BoundingVolumeHierarchy.MAX_DEPTH);
+        var uv = new Vector2i();
+        var layerStarts = new int[rayPositions.length + 1];
+        var builder = new GBufferBuilder();
+        for (int i = 0, raysLength = rayPositions.length; i < raysLength; i++) {
+            layerStarts[i] = builder.size;
+            hits.clear();
+            collector.reset(rayPositions[i], rayDirections[i]);
+            scene.bvh().traverse(rayPositions[i], rayDirections[i], 0, Float.POSITIVE_INFINITY, stack, collector);
+            var hitCount = hits.size();
+            if (hitCount == 0) {
+                continue;
+            }
+            hits.sortByDistance();
+            for (int j = 0; j < hitCount; j++) {
+                var triangleId = hits.id(j);
+                var textureSize = triangles[triangleId].textureSize();
+                functor.getTextureUV(packedTriangles, triangleId, hits.u(j), hits.v(j), textureSize, uv);
+                builder.add(canonicalIndex[triangleId], uv.x + uv.y * textureSize.x, hits.distance(j));
+            }
+        }
+        layerStarts[rayPositions.length] = builder.size;
+        return builder.build(layerStarts);
+    }
+
+    private static void shade(@NotNull RenderContext context,
+                              @NotNull GBuffer gBuffer,
+                              @NotNull TextureAtlas textureAtlas,
+                              int @NotNull [] canonicalOrder,
+                              @NotNull ColorSink sink) {
+        var layerStarts = gBuffer.layerStarts;
+        var order = context.ints(ORDER_SLOT, 16);
+        var color = new ColorCompositor();
+        for (int i = 0, raysLength = layerStarts.length - 1; i < raysLength; i++) {
+            var start = layerStarts[i];
+            var count = layerStarts[i + 1] - start;
+            color.reset();
+            if (count == 0) {
+                sink.write(i, color);
+                continue;
+            }
+            if (order.length < count) {
+                order = context.ints(ORDER_SLOT, count);
+            }
+            // layers at the same distance are ordered by the triangle index in this scene, as BVHRayTraceWorker does
+            for (int j = 0; j < count; j++) {
+                var layer = start + j;
+                var k = j;
+                while (k > 0 && Float.compare(gBuffer.distances[order[k - 1]], gBuffer.distances[layer]) == 0
+                        && canonicalOrder[gBuffer.triangles[order[k - 1]]] > canonicalOrder[gBuffer.triangles[layer]]) {
+                    order[k] = order[k - 1];
+                    k--;
+                }
+                order[k] = layer;
+            }
+            for (int j = 0; j < count; j++) {
+                var layer = order[j];
+                color.add(textureAtlas.texel(canonicalOrder[gBuffer.triangles[layer]], gBuffer.texels[layer]));
+                // an opaque color is never changed by the layers behind
+                if (color.isOpaque()) {
+                    break;
+                }
+            }
+            sink.write(i, color);
+        }
+    }
+
+    /**
+     * The cached layers of all rays, the layers of ray i are [layerStarts[i], layerStarts[i + 1]), from near to far.
+     */
+    private record GBuffer(int @NotNull [] layerStarts, int @NotNull [] triangles, int @NotNull [] texels,
+                           float @NotNull [] distances) {
+    }
+
+    private static final class GBufferBuilder {
+        private int size;
+        private int[] triangles = new int[64];
+        private int[] texels = new int[64];
+        private float[] distances = new float[64];
+
+        void add(int triangle, int texel, float distance) {
+            if (size == triangles.length) {
+                var newCapacity = size << 1;
+                triangles = Arrays.copyOf(triangles, newCapacity);
+                texels = Arrays.copyOf(texels, newCapacity);
+                distances = Arrays.copyOf(distances, newCapacity);
+            }
+            triangles[size] = triangle;
+            texels[size] = texel;
+            distances[size] = distance;
+            size++;
+        }
+
+        @NotNull GBuffer build(int @NotNull [] layerStarts) {
+            return new GBuffer(layerStarts, Arrays.copyOf(triangles, size), Arrays.copyOf(texels, size),
+                    Arrays.copyOf(distances, size));
+        }
+    }
+
+    private static long weight(@NotNull GBufferKey key, @NotNull GBuffer gBuffer) {
+        // the arrays and the objects of the key and the G-buffer, the key may keep the geometry alive after its scene
+        var bytes = 256 + key.geometry.bytes()
+                + 4L * (gBuffer.layerStarts.length + gBuffer.triangles.length + gBuffer.texels.length + gBuffer.distances.length);
+        return key.rays instanceof CopiedRays copiedRays ? bytes + 4L * copiedRays.values.length : bytes;
+    }
+
+    /**
+     * The fingerprint of a geometry seen by a set of rays.
+     *
+     * @param geometry the triangles in the canonical order
+     * @param rays     the {@link GridRays} or {@link CopiedRays} of the rays
+     * @param functor  the class of the triangle functor that traced the G-buffer
+     */
+    private record GBufferKey(@NotNull CanonicalGeometry geometry, @NotNull Object rays, boolean singleSided,
+                              @NotNull Class<? extends TriangleFunctor> functor) {
+    }
+
+    /**
+     * The rays of a window of a ray grid.
+     */
+    private record GridRays(@NotNull RayGrid rayGrid, int startX, int startY, int width, int height) {
+    }
+
+    /**
+     * A copy of arbitrary rays, compared by content.
+     * Rays sharing one direction, e.g. the rays of an orthogonal camera, keep it once.
+     */
+    private static final class CopiedRays {
+        // the shared direction then the positions, or the position and direction of each ray
+        private final float[] values;
+        private final boolean sharedDirection;
+        private final int hash;
+
+        CopiedRays(@NotNull Vector3f @NotNull [] rayPositions, @NotNull Vector3f @NotNull [] rayDirections) {
+            var shared = true;
+            for (int i = 1; i < rayDirections.length && shared; i++) {
+                shared = rayDirections[i].equals(rayDirections[0]);
+            }
+            this.sharedDirection = shared;
+            if (shared) {
+                values = new float[3 + rayPositions.length * 3];
+                if (rayDirections.length > 0) {
+                    put(values, 0, rayDirections[0]);
+                }
+                for (int i = 0; i < rayPositions.length; i++) {
+                    put(values, 3 + i * 3, rayPositions[i]);
+                }
+            } else {
+                values = new float[rayPositions.length * 6];
+                for (int i = 0; i < rayPositions.length; i++) {
+                    put(values, i * 6, rayPositions[i]);
+                    put(values, i * 6 + 3, rayDirections[i]);
+                }
+            }
+            this.hash = Arrays.hashCode(values);
+        }
+
+        private static void put(float @NotNull [] values, int index, @NotNull Vector3f vector) {
+            values[index] = vector.x;
+            values[index + 1] = vector.y;
+            values[index + 2] = vector.z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof CopiedRays rays && hash == rays.hash && sharedDirection == rays.sharedDirection
+                    && Arrays.equals(values, rays.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.functor.TriangleFunctor;
+import cn.powernukkitx.pir.object.Ray;
+import cn.powernukkitx.pir.object.geometry.Shape;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import cn.powernukkitx.pir.object.light.Light;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.TextureAtlas;
+import cn.powernukkitx.pir.util.ColorCompositor;
+import cn.powernukkitx.pir.util.ColorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Matrix3f;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+
+/**
+ * RasterizingWorker renders the parallel rays of an orthogonal camera by rasterization.<br/>
+ * Each triangle is projected onto the pixel grid once, and only the pixels in its projected bounding box are tested,
+ * so the cost is proportional to the pixels covered instead of rays × triangles.
+ * The fragments of each pixel are sorted by distance, so translucent layers are composited as by the ray tracers.<br/>
+ * Each covered pixel is tested with the same ray-triangle test as {@link BVHRayTraceWorker}, so the output is the same.
+ * Rays that are not a regular grid of parallel rays, see {@link #rayTraceGrid}, are traced by a {@link BVHRayTraceWorker},
+ * which stays the reference to compare against.
+ */
+public class RasterizingWorker implements RayTraceWorker {
+    /**
+     * Pixels tested around the projected bounding box of a triangle, covers the rounding errors of the projection.
+     */
+    private static final int BOUNDS_MARGIN = 1;
+    // the slots of the scratch buffers in a RenderContext
+    private static final int FRAGMENTS_SLOT = 0;
+    private static final int HITS_SLOT = 1;
+    private static final int FRAGMENT_PIXELS_SLOT = 0;
+    private static final int PIXEL_STARTS_SLOT = 1;
+    private static final int BUCKETED_SLOT = 2;
+    private static final int CURSOR_SLOT = 3;
+
+    public final boolean singleSided;
+    public final TriangleFunctor functor;
+    private final BVHRayTraceWorker reference;
+
+    /**
+     * @param functor the triangle functor of the rays traced by this worker
+     */
+    public RasterizingWorker(boolean singleSided, @NotNull TriangleFunctor functor) {
+        this.singleSided = singleSided;
+        this.functor = functor;
+        this.reference = new BVHRayTraceWorker(singleSided, false, functor);
+    }
+
+    public RasterizingWorker(boolean singleSided) {
+        this(singleSided, TriangleFunctor.current());
+    }
+
+    public RasterizingWorker() {
+        this(false);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Ray @NotNull [] rays,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        return reference.rayTrace(rays, triangles, otherShapes, lights, defaultColor);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        return reference.rayTrace(rayPositions, rayDirections, triangles, otherShapes, lights, defaultColor);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull FrozenScene scene) {
+        return reference.rayTrace(rayPositions, rayDirections, scene);
+    }
+
+    @Override
+    public void rayTraceInto(int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        reference.rayTraceInto(argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+    }
+
+    @Override
+    public void rayTraceInto(@NotNull RenderContext context,
+                             int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        reference.rayTraceInto(context, argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+    }
+
+    /**
+     * Render a grid of parallel rays, the ray of pixel (x, y) is at index {@code y * width + x}
+     * and its position is about {@code rayPositions[0] + x * right + y * up}.
+     *
+     * @param rayPositions  the positions of the rays, width * height elements
+     * @param rayDirections the directions of the rays, all equal
+     * @param width         the width of the grid
+     * @param height        the height of the grid
+     * @param scene         the scene to render
+     * @return the colors of the rays
+     */
+    public @NotNull Vector4f @NotNull [] rayTraceGrid(@NotNull Vector3f @NotNull [] rayPositions,
+                                                      @NotNull Vector3f @NotNull [] rayDirections,
+                                                      int width, int height,
+                                                      @NotNull FrozenScene scene) {
+        checkGrid(rayPositions, rayDirections, width, height);
+        var toGrid = gridProjection(rayPositions, rayDirections, width, height);
+        if (toGrid == null) {
+            return reference.rayTrace(rayPositions, rayDirections, scene);
+        }
+        var results = new Vector4f[rayPositions.length];
+        rayTraceGrid(new RenderContext(), rayPositions, rayDirections, width, height, toGrid, scene,
+                ColorSink.of(results, scene.getDefaultColor()));
+        return results;
+    }
+
+    /**
+     * Render a grid of parallel rays into ARGB pixels, see {@link #rayTraceGrid(Vector3f[], Vector3f[], int, int, FrozenScene)}
+     * and {@link #rayTraceInto}.
+     */
+    public void rayTraceGridInto(int @NotNull [] argbOut, int offset, int scanline,
+                                 @NotNull Vector3f @NotNull [] rayPositions,
+                                 @NotNull Vector3f @NotNull [] rayDirections,
+                                 int width, int height,
+                                 @NotNull FrozenScene scene) {
+        rayTraceGridInto(new RenderContext(), argbOut, offset, scanline, rayPositions, rayDirections, width, height, scene);
+    }
+
+    /**
+     * The same as {@link #rayTraceGridInto(int[], int, int, Vector3f[], Vector3f[], int, int, FrozenScene)},
+     * taking the scratch buffers from the given context.
+     */
+    public void rayTraceGridInto(@NotNull RenderContext context,
+                                 int @NotNull [] argbOut, int offset, int scanline,
+                                 @NotNull Vector3f @NotNull [] rayPositions,
+                                 @NotNull Vector3f @NotNull [] rayDirections,
+                                 int width, int height,
+                                 @NotNull FrozenScene scene) {
+        checkGrid(rayPositions, rayDirections, width, height);
+        var toGrid = gridProjection(rayPositions, rayDirections, width, height);
+        if (toGrid == null) {
+            reference.rayTraceInto(context, argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+            return;
+        }
+        rayTraceGrid(context, rayPositions, rayDirections, width, height, toGrid, scene,
+                ColorSink.of(argbOut, offset, scanline, width, ColorUtil.toInt(scene.getDefaultColor())));
+    }
+
+    private static void checkGrid(@NotNull Vector3f @NotNull [] rayPositions,
+                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                  int width, int height) {
+        if (width * height != rayPositions.length || rayDirections.length != rayPositions.length) {
+            throw new IllegalArgumentException("Expected " + width + " * " + height + " rays, got " + rayPositions.length);
+        }
+    }
+
+    @SuppressWarnings("DuplicatedCode")
+    private void rayTraceGrid(@NotNull RenderContext context,
+                              @NotNull Vector3f @NotNull [] rayPositions,
+                              @NotNull Vector3f @NotNull [] rayDirections,
+                              int width, int height,
+                              @NotNull Matrix3f toGrid,
+                              @NotNull FrozenScene scene,
+                              @NotNull ColorSink sink) {
+        var origin = rayPositions[0];
+        var direction = rayDirections[0];
+        var triangles = scene.triangles();
+        var packedTriangles = scene.packedTriangles();
+        var textureAtlas = scene.textureAtlas();
+        // scan-convert every triangle into fragments
+        var fragments = context.hitList(FRAGMENTS_SLOT, Math.max(16, rayPositions.length));
+        var fragmentPixels = context.ints(FRAGMENT_PIXELS_SLOT, Math.max(16, rayPositions.length));
+        var vertex = new Vector3f();
+        for (int i = 0; i < triangles.length; i++) {
+            var posMat = triangles[i].posMat();
+            var minX = Float.POSITIVE_INFINITY;
+            var minY = Float.POSITIVE_INFINITY;
+            var maxX = Float.NEGATIVE_INFINITY;
+            var maxY = Float.NEGATIVE_INFINITY;
+            for (int j = 0; j < 3; j++) {
+                posMat.getColumn(j, vertex).sub(origin).mul(toGrid);
+                minX = Math.min(minX, vertex.x);
+                minY = Math.min(minY, vertex.y);
+                maxX = Math.max(maxX, vertex.x);
+                maxY = Math.max(maxY, vertex.y);
+            }
+            var startX = Math.max(0, (int) Math.floor(minX) - BOUNDS_MARGIN);
+            var startY = Math.max(0, (int) Math.floor(minY) - BOUNDS_MARGIN);
+            var endX = Math.min(width - 1, (int) Math.ceil(maxX) + BOUNDS_MARGIN);
+            var endY = Math.min(height - 1, (int) Math.ceil(maxY) + BOUNDS_MARGIN);
+            for (int y = startY; y <= endY; y++) {
+                for (int x = startX; x <= endX; x++) {
+                    var pixel = y * width + x;
+                    var hit = singleSided
+                            ? functor.intersectsSingleSided(packedTriangles, i, rayPositions[pixel], direction, fragments)
+                            : functor.intersects(packedTriangles, i, rayPositions[pixel], direction, fragments);
+                    if (hit) {
+                        if (fragments.size() > fragmentPixels.length) {
+                            fragmentPixels = context.ints(FRAGMENT_PIXELS_SLOT, fragmentPixels.length << 1);
+                        }
+                        fragmentPixels[fragments.size() - 1] = pixel;
+                    }
+                }
+            }
+        }
+        // bucket the fragments by pixel
+        var fragmentCount = fragments.size();
+        var pixelStarts = context.ints(PIXEL_STARTS_SLOT, rayPositions.length + 1);
+        Arrays.fill(pixelStarts, 0, rayPositions.length + 1, 0);
+        for (int i = 0; i < fragmentCount; i++) {
+            pixelStarts[fragmentPixels[i] + 1]++;
+        }
+        for (int i = 0; i < rayPositions.length; i++) {
+            pixelStarts[i + 1] += pixelStarts[i];
+        }
+        var bucketed = context.ints(BUCKETED_SLOT, fragmentCount);
+        var cursor = context.ints(CURSOR_SLOT, rayPositions.length);
+        System.arraycopy(pixelStarts, 0, cursor, 0, rayPositions.length);
+        for (int i = 0; i < fragmentCount; i++) {
+            bucketed[cursor[fragmentPixels[i]]++] = i;
+        }
+        // resolve every pixel
+        var hits = context.hitList(HITS_SLOT);
+        var uv = new Vector2i();
+        var color = new ColorCompositor();
+        for (int pixel = 0; pixel < rayPositions.length; pixel++) {
+            var hitCount = pixelStarts[pixel + 1] - pixelStarts[pixel];
+            color.reset();
+            if (hitCount == 0) {
+                sink.write(pixel, color);
+                continue;
+            }
+            hits.clear();
+            for (int i = pixelStarts[pixel]; i < pixelStarts[pixel + 1]; i++) {
+                var fragment = bucketed[i];
+                hits.add(fragments.id(fragment), fragments.distance(fragment), fragments.u(fragment), fragments.v(fragment));
+            }
+            hits.sortByDistance();
+            for (int j = 0; j < hitCount; j++) {
+                var triangleId = hits.id(j);
+                var textureSize = triangles[triangleId].textureSize();
+                functor.getTextureUV(packedTriangles, triangleId, hits.u(j), hits.v(j), textureSize, uv);
+                color.add(textureAtlas.texel(triangleId, uv.x, uv.y));
+                // an opaque color is never changed by the layers behind
+                if (color.isOpaque()) {
+                    break;
+                }
+            }
+            sink.write(pixel, color);
+        }
+    }
+
+    /**
+     * @return the matrix that maps a position relative to the first ray to (grid x, grid y, distance along the rays),
+     * null if the rays are not a regular grid of parallel rays
+     */
+    private static Matrix3f gridProjection(@NotNull Vector3f @NotNull [] rayPositions,
+                                           @NotNull Vector3f @NotNull [] rayDirections,
+                                           int width, int height) {
+        if (width < 2 || height < 2) {
+            return null;
+        }
+        var direction = rayDirections[0];
+        for (var each : rayDirections) {
+            if (each != direction && !each.equals(direction)) {
+                return null;
+            }
+        }
+        var right = rayPositions[1].sub(rayPositions[0], new Vector3f());
+        var up = rayPositions[width].sub(rayPositions[0], new Vector3f());
+        var toGrid = new Matrix3f(right, up, direction);
+        if (Math.abs(toGrid.determinant()) < 1e-12f) {
+            return null;
+        }
+        toGrid.invert();
+        // every ray must be near its grid point, otherwise the projected bounds could miss it
+        var tmp = new Vector3f();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                rayPositions[y * width + x].sub(rayPositions[0], tmp).mul(toGrid);
+                if (!(Math.abs(tmp.x - x) < 0.5f && Math.abs(tmp.y - y) < 0.5f)) {
+                    return null;
+                }
+            }
+        }
+        return toGrid;
+    }
+}
@@ -4,6 +4,8 @@ import cn.powernukkitx.pir.object.Ray;
 import cn.powernukkitx.pir.object.geometry.Shape;
 import cn.powernukkitx.pir.object.geometry.Triangle;
 import cn.powernukkitx.pir.object.light.Light;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.util.ColorUtil;
 import org.jetbrains.annotations.NotNull;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
@@ -23,4 +25,46 @@ public interface RayTraceWorker {
                                   @NotNull Shape @NotNull [] otherShapes,
                                   @NotNull Light @NotNull [] lights,
                                   @NotNull Vector4f defaultColor);
+
+    /**
+     * Ray trace a frozen scene.<br/>
+     * Workers that make use of the acceleration structures built by {@link FrozenScene} override this,
+     * others trace the flat triangle array of the scene.
+     */
+    @NotNull
+    default Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                          @NotNull Vector3f @NotNull [] rayDirections,
+                                          @NotNull FrozenScene scene) {
+        return rayTrace(rayPositions, rayDirections, scene.triangles(), scene.otherShapes(), scene.lights(), scene.getDefaultColor());
+    }
+
+    /**
+     * Ray trace a frozen scene into ARGB pixels, e.g. the {@link java.awt.image.DataBufferInt} of a BufferedImage.<br/>
+     * The rays are rows of width rays, the color of rayPositions[y * width + x] is written to argbOut[offset + y * scanline + x],
+     * a negative scanline writes the rows bottom-up.
+     * The pixels are exactly {@link ColorUtil#toInt(Vector4f)} of {@link #rayTrace(Vector3f[], Vector3f[], FrozenScene)}.
+     * Workers that composite without a Vector4f per ray override this, others convert the colors.
+     */
+    default void rayTraceInto(int @NotNull [] argbOut, int offset, int scanline, int width,
+                              @NotNull Vector3f @NotNull [] rayPositions,
+                              @NotNull Vector3f @NotNull [] rayDirections,
+                              @NotNull FrozenScene scene) {
+        var colors = rayTrace(rayPositions, rayDirections, scene);
+        for (int i = 0; i < colors.length; i++) {
+            argbOut[offset + i / width * scanline + i % width] = ColorUtil.toInt(colors[i]);
+        }
+    }
+
+    /**
+     * The same as {@link #rayTraceInto(int[], int, int, int, Vector3f[], Vector3f[], FrozenScene)},
+     * taking the scratch buffers from the given context instead of allocating them.
+     * Workers that have no scratch buffers ignore the context.
+     */
+    default void rayTraceInto(@NotNull RenderContext context,
+                              int @NotNull [] argbOut, int offset, int scanline, int width,
+                              @NotNull Vector3f @NotNull [] rayPositions,
+                              @NotNull Vector3f @NotNull [] rayDirections,
+                              @NotNull FrozenScene scene) {
+        rayTraceInto(argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+    }
 }
@@ -0,0 +1,156 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.functor.HitList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The scratch buffers of the renders run by one thread, an arena that {@link RayTraceWorker}s reuse
+ * instead of allocating them per call.<br/>
+ * Buffers are addressed by a small slot number chosen by the worker and grow to the largest size asked for.
+ * During a render they are never dropped; {@link #trim()} drops the largest of them until the retained bytes fit in the byte cap,
+ * so the memory kept between renders is bounded, and {@link #release()} drops all of them.<br/>
+ * Not thread-safe: a context is used by one render at a time, callers that render in parallel pool one context per thread.
+ */
+public final class RenderContext implements AutoCloseable {
+    public static final long DEFAULT_BYTE_CAP = 32L << 20;
+    public static final int SLOTS = 8;
+    // the 7 int or float arrays of a HitList
+    private static final int HIT_BYTES = 7 * Integer.BYTES;
+
+    private final long byteCap;
+    private final int[][] intBuffers = new int[SLOTS][];
+    private final HitList[] hitLists = new HitList[SLOTS];
+    private long highWaterMark;
+
+    public RenderContext(long byteCap) {
+        if (byteCap < 0) {
+            throw new IllegalArgumentException("Byte cap must not be negative: " + byteCap);
+        }
+        this.byteCap = byteCap;
+    }
+
+    public RenderContext() {
+        this(DEFAULT_BYTE_CAP);
+    }
+
+    /**
+     * @param slot      the slot of the buffer, in [0, {@link #SLOTS})
+     * @param minLength the least length of the buffer
+     * @return the buffer of the slot, grown to at least minLength, the contents before a growth are kept
+     */
+    public int @NotNull [] ints(int slot, int minLength) {
+        var buffer = intBuffers[slot];
+        if (buffer == null || buffer.length < minLength) {
+            buffer = buffer == null ? new int[minLength] : Arrays.copyOf(buffer, Math.max(minLength, buffer.length + (buffer.length >> 1)));
+            intBuffers[slot] = buffer;
+            updateHighWaterMark();
+        }
+        return buffer;
+    }
+
+    /**
+     * @param slot the slot of the list, in [0, {@link #SLOTS})
+     * @return the empty hit list of the slot
+     */
+    public @NotNull HitList hitList(int slot) {
+        var hitList = hitLists[slot];
+        if (hitList == null) {
+            hitList = new HitList();
+            hitLists[slot] = hitList;
+        }
+        // a list grows by itself, count its growth of the last use
+        updateHighWaterMark();
+        hitList.clear();
+        return hitList;
+    }
+
+    /**
+     * @param slot            the slot of the list, in [0, {@link #SLOTS})
+     * @param initialCapacity the capacity of the list if it has to be created
+     * @return the empty hit list of the slot
+     */
+    public @NotNull HitList hitList(int slot, int initialCapacity) {
+        if (hitLists[slot] == null) {
+            hitLists[slot] = new HitList(initialCapacity);
+        }
+        return hitList(slot);
+    }
+
+    /**
+     * @return the bytes of the buffers kept by this context
+     */
+    public long retainedBytes() {
+        var bytes = 0L;
+        for (var buffer : intBuffers) {
+            if (buffer != null) bytes += (long) buffer.length * Integer.BYTES;
+        }
+        for (var hitList : hitLists) {
+            if (hitList != null) bytes += (long) hitList.capacity() * HIT_BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the most bytes the buffers of this context have held at once, as of the last request or {@link #trim()}
+     */
+    public long highWaterMark() {
+        return highWaterMark;
+    }
+
+    public long byteCap() {
+        return byteCap;
+    }
+
+    /**
+     * Drop the largest buffers until the retained bytes are within the byte cap.
+     * Call it when a render ends, e.g. before returning a pooled context to its pool.
+     */
+    public void trim() {
+        var bytes = updateHighWaterMark();
+        while (bytes > byteCap) {
+            var largestSlot = -1;
+            var largestBytes = 0L;
+            var largestIsHitList = false;
+            for (int i = 0; i < SLOTS; i++) {
+                if (intBuffers[i] != null && (long) intBuffers[i].length * Integer.BYTES > largestBytes) {
+                    largestSlot = i;
+                    largestBytes = (long) intBuffers[i].length * Integer.BYTES;
+                    largestIsHitList = false;
+                }
+                if (hitLists[i] != null && (long) hitLists[i].capacity() * HIT_BYTES > largestBytes) {
+                    largestSlot = i;
+                    largestBytes = (long) hitLists[i].capacity() * HIT_BYTES;
+                    largestIsHitList = true;
+                }
+            }
+            if (largestIsHitList) {
+                hitLists[largestSlot] = null;
+            } else {
+                intBuffers[largestSlot] = null;
+            }
+            bytes -= largestBytes;
+        }
+    }
+
+    /**
+     * Drop all the buffers, the context can still be used.
+     */
+    public void release() {
+        updateHighWaterMark();
+        Arrays.fill(intBuffers, null);
+        Arrays.fill(hitLists, null);
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    private long updateHighWaterMark() {
+        var bytes = retainedBytes();
+        highWaterMark = Math.max(highWaterMark, bytes);
+        return bytes;
+    }
+}
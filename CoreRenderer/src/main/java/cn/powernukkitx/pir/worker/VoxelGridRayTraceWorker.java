@@ -0,0 +1,232 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.functor.HitList;
+import cn.powernukkitx.pir.functor.PackedTriangles;
+import cn.powernukkitx.pir.functor.TriangleFunctor;
+import cn.powernukkitx.pir.object.Ray;
+import cn.powernukkitx.pir.object.SceneObject;
+import cn.powernukkitx.pir.object.geometry.Shape;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import cn.powernukkitx.pir.object.light.Light;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.TextureAtlas;
+import cn.powernukkitx.pir.scene.VoxelGrid;
+import cn.powernukkitx.pir.util.ColorCompositor;
+import cn.powernukkitx.pir.util.ColorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+/**
+ * VoxelGridRayTraceWorker walks the {@link VoxelGrid} of a {@link FrozenScene} with a 3D DDA,
+ * so each ray only tests the triangles in the cells it passes through, for block models made of axis-aligned cuboids.<br/>
+ * The cells are visited from near to far, the hits of a ray are composited as soon as no later cell can hit in front of them,
+ * and the ray stops once the composited color is opaque.<br/>
+ * Scenes that are not axis-aligned have no voxel grid, they are traced by {@link BVHRayTraceWorker} instead.
+ * The output is the same as BVHRayTraceWorker. It supports ONLY Triangles, and rays only hit triangles in front of their origin.
+ */
+public class VoxelGridRayTraceWorker implements RayTraceWorker {
+    // the slots of the scratch buffers in a RenderContext
+    private static final int HITS_SLOT = 0;
+    private static final int MAILBOX_SLOT = 0;
+
+    public final boolean singleSided;
+    public final TriangleFunctor functor;
+    private final BVHRayTraceWorker fallback;
+
+    /**
+     * @param functor the triangle functor of the rays traced by this worker
+     */
+    public VoxelGridRayTraceWorker(boolean singleSided, @NotNull TriangleFunctor functor) {
+        this.singleSided = singleSided;
+        this.functor = functor;
+        this.fallback = new BVHRayTraceWorker(singleSided, true, functor);
+    }
+
+    public VoxelGridRayTraceWorker(boolean singleSided) {
+        this(singleSided, TriangleFunctor.current());
+    }
+
+    public VoxelGridRayTraceWorker() {
+        this(false);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Ray @NotNull [] rays,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        var rayPositions = new Vector3f[rays.length];
+        var rayDirections = new Vector3f[rays.length];
+        for (int i = 0; i < rays.length; i++) {
+            rayPositions[i] = rays[i].pos();
+            rayDirections[i] = rays[i].direction();
+        }
+        return rayTrace(rayPositions, rayDirections, triangles, otherShapes, lights, defaultColor);
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull Triangle @NotNull [] triangles,
+                                                  @NotNull Shape @NotNull [] otherShapes,
+                                                  @NotNull Light @NotNull [] lights,
+                                                  @NotNull Vector4f defaultColor) {
+        // no frozen scene, freeze the objects into a temporary one
+        var objects = new LinkedHashSet<SceneObject>(triangles.length + lights.length);
+        objects.addAll(Arrays.asList(triangles));
+        objects.addAll(Arrays.asList(lights));
+        var scene = new FrozenScene(objects);
+        var grid = scene.voxelGrid();
+        if (grid == null) {
+            return fallback.rayTrace(rayPositions, rayDirections, triangles, otherShapes, lights, defaultColor);
+        }
+        var results = new Vector4f[rayPositions.length];
+        rayTrace(new RenderContext(), rayPositions, rayDirections, scene, grid, ColorSink.of(results, defaultColor));
+        return results;
+    }
+
+    @Override
+    public @NotNull Vector4f @NotNull [] rayTrace(@NotNull Vector3f @NotNull [] rayPositions,
+                                                  @NotNull Vector3f @NotNull [] rayDirections,
+                                                  @NotNull FrozenScene scene) {
+        var grid = scene.voxelGrid();
+        if (grid == null) {
+            return fallback.rayTrace(rayPositions, rayDirections, scene);
+        }
+        var results = new Vector4f[rayPositions.length];
+        rayTrace(new RenderContext(), rayPositions, rayDirections, scene, grid, ColorSink.of(results, scene.getDefaultColor()));
+        return results;
+    }
+
+    @Override
+    public void rayTraceInto(int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        rayTraceInto(new RenderContext(), argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+    }
+
+    @Override
+    public void rayTraceInto(@NotNull RenderContext context,
+                             int @NotNull [] argbOut, int offset, int scanline, int width,
+                             @NotNull Vector3f @NotNull [] rayPositions,
+                             @NotNull Vector3f @NotNull [] rayDirections,
+                             @NotNull FrozenScene scene) {
+        var grid = scene.voxelGrid();
+        if (grid == null) {
+            fallback.rayTraceInto(context, argbOut, offset, scanline, width, rayPositions, rayDirections, scene);
+            return;
+        }
+        rayTrace(context, rayPositions, rayDirections, scene, grid,
+                ColorSink.of(argbOut, offset, scanline, width, ColorUtil.toInt(scene.getDefaultColor())));
+    }
+
+    private void rayTrace(@NotNull RenderContext context,
+                          @NotNull Vector3f @NotNull [] rayPositions,
+                          @NotNull Vector3f @NotNull [] rayDirections,
+                          @NotNull FrozenScene scene,
+                          @NotNull VoxelGrid grid,
+                          @NotNull ColorSink sink) {
+        var triangles = scene.triangles();
+        // the last ray that tested each triangle, a triangle is in all the cells its box overlaps
+        var mailbox = context.ints(MAILBOX_SLOT, triangles.length);
+        Arrays.fill(mailbox, 0, triangles.length, -1);
+        var visitor = new CellVisitor(functor, triangles, scene.packedTriangles(), scene.textureAtlas(),
+                singleSided, context.hitList(HITS_SLOT), mailbox);
+        for (int i = 0, raysLength = rayPositions.length; i < raysLength; i++) {
+            visitor.reset(i, rayPositions[i], rayDirections[i]);
+            if (grid.traverse(rayPositions[i], rayDirections[i], 0, Float.POSITIVE_INFINITY, visitor)) {
+                visitor.composite(Float.POSITIVE_INFINITY);
+            }
+            sink.write(i, visitor.color);
+        }
+    }
+
+    /**
+     * Tests the triangles of the cells passed by one ray, and composites the hits in front of each cell exit.
+     */
+    private static final class CellVisitor implements VoxelGrid.CellVisitor {
+        private final TriangleFunctor functor;
+        private final Triangle[] triangles;
+        private final PackedTriangles packedTriangles;
+        private final TextureAtlas textureAtlas;
+        private final boolean singleSided;
+        private final HitList hits;
+        private final int[] mailbox;
+        private final Vector2i uv = new Vector2i();
+        final ColorCompositor color = new ColorCompositor();
+        private int ray;
+        private Vector3f pos;
+        private Vector3f direction;
+        // the hits before it are composited
+        private int composited;
+        private boolean unsorted;
+
+        CellVisitor(TriangleFunctor functor, Triangle[] triangles, PackedTriangles packedTriangles, TextureAtlas textureAtlas,
+                    boolean singleSided, HitList hits, int[] mailbox) {
+            this.functor = functor;
+            this.triangles = triangles;
+            this.packedTriangles = packedTriangles;
+            this.textureAtlas = textureAtlas;
+            this.singleSided = singleSided;
+            this.hits = hits;
+            this.mailbox = mailbox;
+        }
+
+        void reset(int ray, Vector3f pos, Vector3f direction) {
+            this.ray = ray;
+            this.pos = pos;
+            this.direction = direction;
+            hits.clear();
+            color.reset();
+            composited = 0;
+            unsorted = false;
+        }
+
+        @Override
+        public boolean visit(@NotNull VoxelGrid grid, int from, int to, float tExit) {
+            for (int i = from; i < to; i++) {
+                var triangleId = grid.primitive(i);
+                if (mailbox[triangleId] == ray) {
+                    continue;
+                }
+                mailbox[triangleId] = ray;
+                var hit = singleSided
+                        ? functor.intersectsSingleSided(packedTriangles, triangleId, pos, direction, hits)
+                        : functor.intersects(packedTriangles, triangleId, pos, direction, hits);
+                unsorted |= hit;
+            }
+            // a triangle hit in front of the cell exit is in a cell already passed, so these hits are all found
+            return !composite(tExit);
+        }
+
+        /**
+         * Composite the hits not farther than maxDistance.
+         *
+         * @return true if the color is opaque, the layers behind cannot change it
+         */
+        boolean composite(float maxDistance) {
+            if (unsorted) {
+                // sort with distance, ties are ordered by triangle index, the same as BVHRayTraceWorker
+                hits.sortByDistance();
+                unsorted = false;
+            }
+            for (int hitCount = hits.size(); composited < hitCount && hits.distance(composited) <= maxDistance; composited++) {
+                var triangleId = hits.id(composited);
+                var textureSize = triangles[triangleId].textureSize();
+                functor.getTextureUV(packedTriangles, triangleId, hits.u(composited), hits.v(composited), textureSize, uv);
+                color.add(textureAtlas.texel(triangleId, uv.x, uv.y));
+                if (color.isOpaque()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package cn.powernukkitx.pir.functor;
+
+import cn.powernukkitx.pir.object.geometry.Cuboid;
+import cn.powernukkitx.pir.object.geometry.Material;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import org.joml.Matrix3f;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CuboidFunctorTest {
+    private static Cuboid makeCuboid() {
+        var uv = new Cuboid.UVDetail[6];
+        for (int i = 0; i < 6; i++) {
+            uv[i] = new Cuboid.UVDetail(0, 0, 8 + i, 16 - i);
+        }
+        // fully transparent faces are never hit, so the texture has to be visible
+        var texture = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < 256; i++) {
+            texture.setRGB(i % 16, i / 16, 0xFF000000 | i);
+        }
+        return new Cuboid(0.1f, 0.2f, 0.3f, 1.2f, 1f, 0.4f, texture, uv);
+    }
+
+    @Test
+    public void entryAndExitFaces() {
+        var cuboids = PackedCuboids.of(new Cuboid[]{makeCuboid()});
+        var hits = new HitList();
+        var functor = CuboidFunctor.current();
+        Assertions.assertTrue(functor.intersects(cuboids, 0, new Vector3f(0, 0, 2), new Vector3f(0, 0, -1), false, 0, hits));
+        Assertions.assertEquals(2, hits.size());
+        Assertions.assertEquals(PackedCuboids.UP, hits.id(0));
+        Assertions.assertEquals(1.5f, hits.distance(0), 1e-6f);
+        Assertions.assertEquals(PackedCuboids.DOWN, hits.id(1));
+        Assertions.assertEquals(1.9f, hits.distance(1), 1e-6f);
+        hits.clear();
+        Assertions.assertTrue(functor.intersects(cuboids, 0, new Vector3f(0, 0, 2), new Vector3f(0, 0, -1), true, 0, hits));
+        Assertions.assertEquals(1, hits.size());
+        Assertions.assertEquals(PackedCuboids.UP, hits.id(0));
+        hits.clear();
+        Assertions.assertFalse(functor.intersects(cuboids, 0, new Vector3f(2, 0, 2), new Vector3f(0, 0, -1), false, 0, hits));
+        Assertions.assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    public void doubleSidedExitFace() {
+        var cuboid = makeCuboid();
+        var materials = Material.defaultFaces();
+        materials[PackedCuboids.DOWN] = Material.DOUBLE_SIDED;
+        var cuboids = PackedCuboids.of(new Cuboid[]{new Cuboid(cuboid.center(), cuboid.xLength(), cuboid.yLength(), cuboid.zLength(),
+                cuboid.textures(), cuboid.textureSizes(), materials)});
+        var hits = new HitList();
+        var functor = CuboidFunctor.current();
+        Assertions.assertTrue(functor.intersects(cuboids, 0, new Vector3f(0, 0, 2), new Vector3f(0, 0, -1), true, 0, hits));
+        Assertions.assertEquals(2, hits.size());
+        Assertions.assertEquals(PackedCuboids.DOWN, hits.id(1));
+        hits.clear();
+        // the back face of an opaque face is still skipped
+        Assertions.assertTrue(functor.intersects(cuboids, 0, new Vector3f(0, 0, -2), new Vector3f(0, 0, 1), true, 0, hits));
+        Assertions.assertEquals(1, hits.size());
+        Assertions.assertEquals(PackedCuboids.DOWN, hits.id(0));
+    }
+
+    @Test
+    public void sameTexelsAsTriangles() {
+        var cuboid = makeCuboid();
+        var cuboids = PackedCuboids.of(new Cuboid[]{cuboid});
+        var triangles = cuboid.triangles();
+        var packedTriangles = PackedTriangles.of(Arrays.stream(triangles).map(Triangle::posMat).toArray(Matrix3f[]::new));
+        var triangleFunctor = new JavaTriangleFunctor();
+        var functor = CuboidFunctor.current();
+        var random = new Random(15);
+        var triangleHits = new HitList();
+        var cuboidHits = new HitList();
+        var expected = new Vector2i();
+        var actual = new Vector2i();
+        for (int i = 0; i < 2000; i++) {
+            var pos = new Vector3f(random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2);
+            var direction = new Vector3f(0.1f, 0.2f, 0.3f).sub(pos).add(random.nextFloat() * 0.8f - 0.4f,
+                    random.nextFloat() * 0.8f - 0.4f, random.nextFloat() * 0.2f - 0.1f);
+            triangleHits.clear();
+            cuboidHits.clear();
+            triangleFunctor.intersects(packedTriangles, pos, direction, triangleHits);
+            functor.intersects(cuboids, pos, direction, false, 0, cuboidHits);
+            triangleHits.sortByDistance();
+            cuboidHits.sortByDistance();
+            Assertions.assertEquals(triangleHits.size(), cuboidHits.size());
+            for (int j = 0; j < cuboidHits.size(); j++) {
+                var triangleId = triangleHits.id(j);
+                var faceId = cuboidHits.id(j);
+                Assertions.assertEquals(triangleId / 2, faceId);
+                Assertions.assertEquals(triangleHits.distance(j), cuboidHits.distance(j), 1e-5f);
+                Assertions.assertEquals(packedTriangles.normalVectors()[triangleId | 1], cuboids.normalVectors()[faceId]);
+                var textureSize = triangles[triangleId].textureSize();
+                triangleFunctor.getTextureUV(packedTriangles, triangleId, triangleHits.u(j), triangleHits.v(j), textureSize, expected);
+                functor.getTextureUV(cuboids, faceId, cuboidHits.u(j), cuboidHits.v(j), actual);
+                // the first triangle of a face has the mirrored texture
+                if ((triangleId & 1) == 0) {
+                    expected.set(textureSize.x - 1 - expected.x, textureSize.y - 1 - expected.y);
+                }
+                Assertions.assertEquals(expected, actual);
+            }
+        }
+    }
+}
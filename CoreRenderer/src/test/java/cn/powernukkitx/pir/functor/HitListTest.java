@@ -0,0 +1,64 @@
+package cn.powernukkitx.pir.functor;
+
+import org.joml.Matrix3f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+public class HitListTest {
+    @Test
+    public void sortByDistanceThenId() {
+        var random = new Random(7);
+        // short lists are insertion sorted, long ones merged
+        for (var size : new int[]{1, 2, 31, 32, 33, 200, 1000}) {
+            var hits = new HitList(4);
+            var expected = new float[size][];
+            for (int i = 0; i < size; i++) {
+                // few distinct distances, so many hits tie
+                var hit = new float[]{random.nextInt(size), random.nextInt(8) / 4f, random.nextFloat(), random.nextFloat()};
+                hits.add((int) hit[0], hit[1], hit[2], hit[3]);
+                expected[i] = hit;
+            }
+            // Arrays.sort is stable, so hits with the same distance and id keep their order
+            Arrays.sort(expected, Comparator.<float[]>comparingDouble(hit -> hit[1]).thenComparingDouble(hit -> hit[0]));
+            hits.sortByDistance();
+            Assertions.assertEquals(size, hits.size());
+            for (int i = 0; i < size; i++) {
+                Assertions.assertEquals((int) expected[i][0], hits.id(i), "hit " + i + " of " + size);
+                Assertions.assertEquals(expected[i][1], hits.distance(i));
+                Assertions.assertEquals(expected[i][2], hits.u(i));
+                Assertions.assertEquals(expected[i][3], hits.v(i));
+            }
+        }
+    }
+
+    @Test
+    public void streamedHitsSorted() {
+        // a stack of 64 parallel triangles, pairs of them at the same depth, hit by one ray from above
+        var triangleMats = new Matrix3f[64];
+        for (int i = 0; i < triangleMats.length; i++) {
+            var z = (i * 37 % 64) / 2;
+            triangleMats[i] = new Matrix3f(-1, -1, z, 2, -1, z, -1, 2, z);
+        }
+        var packed = PackedTriangles.of(triangleMats);
+        var functor = new JavaTriangleFunctor();
+        var pos = new Vector3f(0, 0, 40);
+        var direction = new Vector3f(0, 0, -1);
+        var hits = new HitList();
+        for (int i = 0; i < packed.size(); i++) {
+            functor.intersects(packed, i, pos, direction, hits);
+        }
+        Assertions.assertEquals(64, hits.size());
+        hits.sortByDistance();
+        for (int i = 1; i < hits.size(); i++) {
+            var compared = Float.compare(hits.distance(i - 1), hits.distance(i));
+            Assertions.assertTrue(compared < 0 || compared == 0 && hits.id(i - 1) < hits.id(i), "hit " + i);
+        }
+        // the nearest layer is the top one
+        Assertions.assertEquals(40 - 31, hits.distance(0), 1e-4f);
+    }
+}
@@ -0,0 +1,87 @@
+package cn.powernukkitx.pir.functor;
+
+import cn.powernukkitx.pir.object.geometry.Cuboid;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import org.joml.Matrix3f;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+public class PackedTrianglesTest {
+    @Test
+    public void paddedToLanes() {
+        var packed = PackedTriangles.of(new Matrix3f[]{new Matrix3f(0, 0, 0, 1, 0, 0, 0, 1, 0)});
+        Assertions.assertEquals(1, packed.size());
+        Assertions.assertEquals(PackedTriangles.LANE_PADDING, packed.paddedSize());
+        Assertions.assertEquals(new Vector3f(0, 0, 1), packed.normalVectors()[0]);
+    }
+
+    @Test
+    public void textureUVSameAsPointLookup() {
+        var functor = new JavaTriangleFunctor();
+        var cuboid = new Cuboid(0.1f, 0.2f, 0.3f, 1.2f, 1f, 0.4f, new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB),
+                new Cuboid.UVDetail[]{
+                        new Cuboid.UVDetail(0, 0, 16, 16),
+                        new Cuboid.UVDetail(0, 0, 16, 16),
+                        new Cuboid.UVDetail(0, 0, 16, 16),
+                        new Cuboid.UVDetail(0, 0, 16, 16),
+                        new Cuboid.UVDetail(0, 0, 16, 16),
+                        new Cuboid.UVDetail(0, 0, 16, 16)
+                });
+        var triangleMats = Arrays.stream(cuboid.triangles()).map(Triangle::posMat).toArray(Matrix3f[]::new);
+        var packed = PackedTriangles.of(triangleMats);
+        var random = new Random(42);
+        var textureSize = new Vector2i(16, 16);
+        var expected = new Vector2i();
+        var actual = new Vector2i();
+        for (int i = 0; i < triangleMats.length; i++) {
+            for (int j = 0; j < 100; j++) {
+                var u = random.nextFloat();
+                var v = random.nextFloat() * (1 - u);
+                functor.getTextureUV(triangleMats[i], functor.pointAt(triangleMats[i], u, v, new Vector3f()), textureSize, expected);
+                functor.getTextureUV(packed, i, u, v, textureSize, actual);
+                Assertions.assertEquals(expected, actual, "triangle " + i);
+            }
+        }
+    }
+
+    @Test
+    public void barycentricHitsSameAsPacked() {
+        var functor = new JavaTriangleFunctor();
+        var random = new Random(16);
+        var triangleMats = new Matrix3f[64];
+        for (int i = 0; i < triangleMats.length; i++) {
+            triangleMats[i] = new Matrix3f(random.nextFloat(), random.nextFloat(), random.nextFloat(),
+                    random.nextFloat(), random.nextFloat(), random.nextFloat(),
+                    random.nextFloat(), random.nextFloat(), random.nextFloat());
+        }
+        var packed = PackedTriangles.of(triangleMats);
+        var textureSize = new Vector2i(16, 8);
+        var expectedHits = new HitList();
+        var actualHits = new HitList();
+        var expected = new Vector2i();
+        var actual = new Vector2i();
+        for (int j = 0; j < 200; j++) {
+            var pos = new Vector3f(random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2, 3);
+            var direction = new Vector3f(0.5f, 0.5f, 0.5f).sub(pos);
+            expectedHits.clear();
+            actualHits.clear();
+            functor.intersects(packed, pos, direction, expectedHits);
+            functor.intersects(triangleMats, pos, direction, actualHits);
+            Assertions.assertEquals(expectedHits.size(), actualHits.size());
+            for (int k = 0; k < actualHits.size(); k++) {
+                var id = actualHits.id(k);
+                Assertions.assertEquals(expectedHits.id(k), id);
+                Assertions.assertEquals(expectedHits.distance(k), actualHits.distance(k));
+                functor.getTextureUV(packed, id, expectedHits.u(k), expectedHits.v(k), textureSize, expected);
+                functor.getTextureUV(triangleMats[id], actualHits.u(k), actualHits.v(k), textureSize, actual);
+                Assertions.assertEquals(expected, actual);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cn.powernukkitx.pir.functor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TriangleFunctorsTest {
+    @Test
+    public void providersSortedByPriority() {
+        var providers = TriangleFunctors.providers();
+        Assertions.assertFalse(providers.isEmpty());
+        for (int i = 1; i < providers.size(); i++) {
+            Assertions.assertTrue(providers.get(i - 1).priority() >= providers.get(i).priority());
+        }
+        Assertions.assertTrue(providers.stream().anyMatch(p -> p.name().equals(JavaTriangleFunctorProvider.NAME)));
+    }
+
+    @Test
+    public void useByName() {
+        var original = TriangleFunctor.current();
+        try {
+            var functor = TriangleFunctors.use(JavaTriangleFunctorProvider.NAME);
+            Assertions.assertSame(JavaTriangleFunctor.class, functor.getClass());
+            Assertions.assertSame(functor, TriangleFunctor.current());
+            Assertions.assertSame(TriangleFunctors.providers().get(0).create().getClass(), TriangleFunctors.use(null).getClass());
+        } finally {
+            TriangleFunctors.use(null);
+        }
+        Assertions.assertSame(original.getClass(), TriangleFunctor.current().getClass());
+    }
+
+    @Test
+    public void createKeepsCurrent() {
+        var original = TriangleFunctor.current();
+        Assertions.assertSame(JavaTriangleFunctor.class, TriangleFunctors.create(JavaTriangleFunctorProvider.NAME).getClass());
+        Assertions.assertSame(original, TriangleFunctor.current());
+    }
+
+    @Test
+    public void useNullRestoresProperty() {
+        try {
+            System.setProperty(TriangleFunctors.PROPERTY, JavaTriangleFunctorProvider.NAME);
+            TriangleFunctors.use(TriangleFunctors.providers().get(0).name());
+            // the default is chosen as at startup, by the property first
+            Assertions.assertSame(JavaTriangleFunctor.class, TriangleFunctors.use(null).getClass());
+        } finally {
+            System.clearProperty(TriangleFunctors.PROPERTY);
+            TriangleFunctors.use(null);
+        }
+    }
+
+    @Test
+    public void useUnknownName() {
+        var original = TriangleFunctor.current();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TriangleFunctors.use("unknown"));
+        Assertions.assertSame(original, TriangleFunctor.current());
+    }
+}
@@ -0,0 +1,138 @@
+package cn.powernukkitx.pir.functor;
+
+import org.joml.Matrix3f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class VectorApiTriangleFunctorTest {
+    private static final int TRIANGLE_COUNT = 37; // not a multiple of the vector length
+    private static final int RAY_COUNT = 2000;
+    // surefire runs the tests twice, with and without --add-modules jdk.incubator.vector
+    private static final boolean VECTOR_MODULE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    @Test
+    public void vectorizedWithModule() {
+        Assumptions.assumeTrue(VECTOR_MODULE, "jdk.incubator.vector is not added");
+        Assertions.assertTrue(VectorApiTriangleFunctor.isVectorized());
+    }
+
+    @Test
+    public void fallbackWithoutModule() {
+        Assumptions.assumeFalse(VECTOR_MODULE, "jdk.incubator.vector is added");
+        Assertions.assertFalse(VectorApiTriangleFunctor.isVectorized());
+        compare(false);
+        compare(true);
+    }
+
+    @Test
+    public void sameAsJavaFunctor() {
+        compare(false);
+    }
+
+    @Test
+    public void sameAsJavaFunctorSingleSided() {
+        compare(true);
+    }
+
+    @Test
+    public void doubleSidedTriangles() {
+        var random = new Random(20230418);
+        var scalar = new JavaTriangleFunctor();
+        var vector = new VectorApiTriangleFunctor();
+        var triangles = new Matrix3f[TRIANGLE_COUNT];
+        var doubleSided = new boolean[TRIANGLE_COUNT];
+        for (int i = 0; i < TRIANGLE_COUNT; i++) {
+            triangles[i] = new Matrix3f(randomPoint(random), randomPoint(random), randomPoint(random));
+            doubleSided[i] = random.nextBoolean();
+        }
+        var packed = PackedTriangles.of(triangles, scalar.normalVector(triangles), doubleSided);
+        var expected = new HitList();
+        var actual = new HitList();
+        var backHits = 0;
+        for (int i = 0; i < RAY_COUNT; i++) {
+            var pos = randomPoint(random).mul(2);
+            var direction = scalar.pointAt(triangles[random.nextInt(TRIANGLE_COUNT)], random.nextFloat(), random.nextFloat() * 0.5f, new Vector3f()).sub(pos);
+            expected.clear();
+            actual.clear();
+            // double-sided triangles are hit from both sides, the others only from the front
+            for (int j = 0; j < TRIANGLE_COUNT; j++) {
+                if (doubleSided[j]) {
+                    if (scalar.intersects(packed, j, pos, direction, expected)
+                            && packed.normalVectors()[j].dot(direction) > 0) {
+                        backHits++;
+                    }
+                } else {
+                    scalar.intersectsSingleSided(packed, j, pos, direction, expected);
+                }
+            }
+            vector.intersectsSingleSided(packed, pos, direction, actual);
+            expected.sortByDistance();
+            actual.sortByDistance();
+            Assertions.assertEquals(expected.size(), actual.size(), "ray " + i);
+            for (int j = 0; j < expected.size(); j++) {
+                Assertions.assertEquals(expected.id(j), actual.id(j), "ray " + i);
+                Assertions.assertEquals(expected.distance(j), actual.distance(j), 1e-6f, "ray " + i);
+            }
+        }
+        Assertions.assertTrue(backHits > 0);
+    }
+
+    @Test
+    public void emptyTriangles() {
+        var hits = new HitList();
+        new VectorApiTriangleFunctor().intersects(PackedTriangles.of(new Matrix3f[0]), new Vector3f(), new Vector3f(0, 0, -1), hits);
+        Assertions.assertTrue(hits.isEmpty());
+    }
+
+    private static void compare(boolean singleSided) {
+        var random = new Random(20230417);
+        var scalar = new JavaTriangleFunctor();
+        var vector = new VectorApiTriangleFunctor();
+        var triangles = new Matrix3f[TRIANGLE_COUNT];
+        for (int i = 0; i < TRIANGLE_COUNT; i++) {
+            triangles[i] = new Matrix3f(randomPoint(random), randomPoint(random), randomPoint(random));
+        }
+        // an axis-aligned triangle and a degenerate one, like the faces of a cube
+        triangles[0] = new Matrix3f(0, 0, 0, 1, 0, 0, 0, 1, 0);
+        triangles[1] = new Matrix3f(0, 0, 0, 1, 1, 1, 2, 2, 2);
+        var normalVectors = scalar.normalVector(triangles);
+        var packed = PackedTriangles.of(triangles, normalVectors);
+        var expected = new HitList();
+        var actual = new HitList();
+        var totalHits = 0;
+        for (int i = 0; i < RAY_COUNT; i++) {
+            // aim most rays at a random point of a random triangle, so there are plenty of hits
+            var pos = randomPoint(random).mul(2);
+            var target = scalar.pointAt(triangles[random.nextInt(TRIANGLE_COUNT)], random.nextFloat(), random.nextFloat() * 0.5f, new Vector3f());
+            var direction = i % 4 == 0 ? randomPoint(random) : target.sub(pos);
+            expected.clear();
+            actual.clear();
+            if (singleSided) {
+                scalar.intersectsSingleSided(triangles, normalVectors, pos, direction, expected);
+                vector.intersectsSingleSided(packed, pos, direction, actual);
+            } else {
+                scalar.intersects(triangles, pos, direction, expected);
+                vector.intersects(packed, pos, direction, actual);
+            }
+            expected.sortByDistance();
+            actual.sortByDistance();
+            Assertions.assertEquals(expected.size(), actual.size(), "ray " + i);
+            for (int j = 0; j < expected.size(); j++) {
+                Assertions.assertEquals(expected.id(j), actual.id(j), "ray " + i);
+                Assertions.assertEquals(expected.distance(j), actual.distance(j), 1e-6f, "ray " + i);
+                Assertions.assertEquals(expected.u(j), actual.u(j), 1e-6f, "ray " + i);
+                Assertions.assertEquals(expected.v(j), actual.v(j), 1e-6f, "ray " + i);
+            }
+            totalHits += expected.size();
+        }
+        Assertions.assertTrue(totalHits > RAY_COUNT / 2, "too few hits to compare: " + totalHits);
+    }
+
+    private static Vector3f randomPoint(Random random) {
+        return new Vector3f(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+    }
+}
@@ -5,8 +5,10 @@ import cn.powernukkitx.pir.object.geometry.Cuboid;
 import cn.powernukkitx.pir.object.geometry.Triangle;
 import cn.powernukkitx.pir.object.light.AmbientLight;
 import cn.powernukkitx.pir.object.light.DirectionalLight;
+import cn.powernukkitx.pir.scene.FrozenScene;
 import cn.powernukkitx.pir.scene.Scene;
 import cn.powernukkitx.pir.scene.SimpleScene;
+import cn.powernukkitx.pir.worker.BVHRayTraceWorker;
 import cn.powernukkitx.pir.worker.RayTraceWorker;
 import cn.powernukkitx.pir.worker.SimpleRayTraceWorker;
 import org.joml.Vector3f;
@@ -14,10 +16,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SuppressWarnings("ResultOfMethodCallIgnored")
 public class SimpleOrthogonalCameraTest {
@@ -168,6 +177,79 @@ public class SimpleOrthogonalCameraTest {
         ImageIO.write((RenderedImage) result, "png", file);
     }
 
+    @Test
+    public void testRayGrid() {
+        var fuzzyUp = new Vector3f(0, 0, 1);
+        var direction = new Vector3f(-1f, -1f, -1f / 1.27f).normalize();
+        var up = direction.cross(fuzzyUp.cross(direction), new Vector3f()).normalize();
+        var position = new Vector3f(4.01f, 4f, 4f / 1.27f);
+        var grid = new SimpleOrthogonalCamera(new Vector3f(position), direction, 200, 150, 1.62f, 1.61f, up).rayGrid();
+        // the positions the camera used to store per pixel
+        var dUp = up.mul(1.61f / 150, new Vector3f());
+        var dRight = direction.cross(up, new Vector3f()).normalize().mul(1.62f / 200);
+        var start = position.sub(dUp.mul(150, new Vector3f()).mul(0.5f)).sub(dRight.mul(200, new Vector3f()).mul(0.5f));
+        var positions = new Vector3f[7 * 5];
+        var directions = new Vector3f[7 * 5];
+        grid.fill(190, 140, 7, 5, positions, directions);
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 7; x++) {
+                var expected = start.add(dUp.mul(140 + y, new Vector3f()), new Vector3f()).add(dRight.mul(190 + x, new Vector3f()));
+                assertEquals(expected, positions[y * 7 + x]);
+                assertSame(direction, directions[y * 7 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testTiled() {
+        var fuzzyUp = new Vector3f(0, 0, 1);
+        var direction = new Vector3f(-1f, -1f, -1f / 1.27f).normalize();
+        var camera = new SimpleOrthogonalCamera(new Vector3f(4.01f, 4f, 4f / 1.27f),
+                direction,
+                200, 150, 1.62f, 1.61f,
+                direction.cross(fuzzyUp.cross(direction), new Vector3f()).normalize()
+        );
+        var expected = (BufferedImage) camera.render(scene3WithTexture, worker);
+        var pool = new ForkJoinPool(3);
+        try {
+            for (var tileSize : new int[]{1, 7, 32, 512}) {
+                var actual = (BufferedImage) camera.render(scene3WithTexture, worker, tileSize, pool);
+                assertArrayEquals(expected.getRGB(0, 0, 200, 150, null, 0, 200),
+                        actual.getRGB(0, 0, 200, 150, null, 0, 200), "tile size " + tileSize);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCulled() throws IOException {
+        var fuzzyUp = new Vector3f(0, 0, 1);
+        var direction = new Vector3f(-1f, -1f, -1f / 1.27f).normalize();
+        var camera = new SimpleOrthogonalCamera(new Vector3f(4.01f, 4f, 4f / 1.27f),
+                direction,
+                128, 128, 1.62f, 1.61f,
+                direction.cross(fuzzyUp.cross(direction), new Vector3f()).normalize()
+        );
+        var texture = ImageIO.read(Objects.requireNonNull(SimpleOrthogonalCameraTest.class
+                .getResourceAsStream("/textures/reactor_core.png")));
+        var tmpScene = new SimpleScene();
+        tmpScene.add(new Cube(0, 0, 0, 1f, texture));
+        // out of the view
+        tmpScene.add(new Cube(5, -5, 0, 1f, texture));
+        tmpScene.add(new AmbientLight(0.1f));
+        tmpScene.add(new DirectionalLight(-1.5f, -1f, -2.25f, 0.63f));
+        for (var singleSided : new boolean[]{false, true}) {
+            var scene = (FrozenScene) tmpScene.freeze();
+            var culled = (FrozenScene) tmpScene.freeze(camera, singleSided);
+            assertTrue(culled.triangles().length < scene.triangles().length / (singleSided ? 3 : 1));
+            var rayTraceWorker = new BVHRayTraceWorker(singleSided);
+            var expected = (BufferedImage) camera.render(scene, rayTraceWorker);
+            var actual = (BufferedImage) camera.render(culled, rayTraceWorker);
+            assertArrayEquals(expected.getRGB(0, 0, 128, 128, null, 0, 128),
+                    actual.getRGB(0, 0, 128, 128, null, 0, 128), "single sided " + singleSided);
+        }
+    }
 
     @Test
     public void test4Performance() {
@@ -0,0 +1,57 @@
+package cn.powernukkitx.pir.object.light;
+
+import cn.powernukkitx.pir.object.geometry.Cube;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.SimpleScene;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+public class LightTest {
+    private static float[] perNormal(Light[] lights, Vector3f[] normalVectors) {
+        var expected = new float[normalVectors.length];
+        for (int i = 0; i < normalVectors.length; i++) {
+            var intensity = new float[1];
+            for (var light : lights) {
+                light.calculateIntensity(intensity, new Vector3f[]{normalVectors[i]});
+            }
+            expected[i] = intensity[0];
+        }
+        return expected;
+    }
+
+    @Test
+    public void intensitiesSameAsPerNormal() {
+        var normalVectors = new Vector3f[]{
+                new Vector3f(0, 0, 1), new Vector3f(0, 0, -1), new Vector3f(1, 0, 0),
+                new Vector3f(0, -1, 0), new Vector3f(1, 1, 1).normalize(), new Vector3f(-0.6f, 0.8f, 0)
+        };
+        var ambient = new AmbientLight(0.1f);
+        var directional = new DirectionalLight(-1.5f, -1f, -2.25f, 0.63f);
+        for (var lights : new Light[][]{{ambient}, {directional}, {ambient, directional}}) {
+            Assertions.assertArrayEquals(perNormal(lights, normalVectors), Light.calculateIntensities(lights, normalVectors));
+        }
+    }
+
+    @Test
+    public void sceneBakedPerTriangle() {
+        var texture = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        // fully transparent faces are dropped from the scene
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                texture.setRGB(x, y, 0xFF808080);
+            }
+        }
+        for (var light : new Light[]{new AmbientLight(0.3f), new DirectionalLight(-1.5f, -1f, -2.25f, 0.63f)}) {
+            var tmpScene = new SimpleScene();
+            tmpScene.add(new Cube(0, 0, 0, 0.5f, texture));
+            tmpScene.add(light);
+            var scene = (FrozenScene) tmpScene.freeze();
+            var expected = perNormal(scene.lights(), scene.packedTriangles().normalVectors());
+            Assertions.assertEquals(12, expected.length);
+            Assertions.assertArrayEquals(expected, scene.lightIntensities());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cn.powernukkitx.pir.scene;
+
+import cn.powernukkitx.pir.object.SceneObject;
+import cn.powernukkitx.pir.object.camera.SimpleOrthogonalCamera;
+import cn.powernukkitx.pir.object.geometry.Cube;
+import cn.powernukkitx.pir.object.geometry.Cuboid;
+import cn.powernukkitx.pir.object.light.AmbientLight;
+import cn.powernukkitx.pir.object.light.DirectionalLight;
+import cn.powernukkitx.pir.worker.BVHRayTraceWorker;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+public class HiddenFacesTest {
+    private static BufferedImage makeTexture(int alpha) {
+        var texture = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < 16; i++) {
+            texture.setRGB(i % 4, i / 4, (alpha << 24) | (i * 0x0F0B07));
+        }
+        return texture;
+    }
+
+    @Test
+    public void touchingCubes() {
+        var texture = makeTexture(0xFF);
+        var cubes = new Cuboid[]{new Cube(0, 0, 0, 1, texture).toCuboid(), new Cube(1, 0, 0, 1, texture).toCuboid()};
+        var result = HiddenFaces.removeHiddenFaces(cubes);
+        Assertions.assertEquals(0, result[0].textureSizes()[4].x);
+        Assertions.assertEquals(0, result[1].textureSizes()[2].x);
+        Assertions.assertEquals(10, countFaces(result));
+    }
+
+    @Test
+    public void partlyCoveredFaceKept() {
+        var texture = makeTexture(0xFF);
+        // the small cuboid covers a quarter of the face of the large one
+        var cuboids = new Cuboid[]{new Cube(0, 0, 0, 1, texture).toCuboid(), new Cube(0.75f, 0.25f, 0.25f, 0.5f, texture).toCuboid()};
+        var result = HiddenFaces.removeHiddenFaces(cuboids);
+        Assertions.assertSame(cuboids[0], result[0]);
+        Assertions.assertEquals(0, result[1].textureSizes()[2].x);
+        Assertions.assertEquals(11, countFaces(result));
+    }
+
+    @Test
+    public void translucentKept() {
+        var cuboids = new Cuboid[]{new Cube(0, 0, 0, 1, makeTexture(0xFF)).toCuboid(), new Cube(0, 0, 1, 1, makeTexture(0x80)).toCuboid()};
+        Assertions.assertArrayEquals(cuboids, HiddenFaces.removeHiddenFaces(cuboids));
+    }
+
+    @Test
+    public void sameImage() {
+        var texture = makeTexture(0xFF);
+        var scene = new SimpleScene();
+        // a staircase of three cubes
+        scene.add(new Cube(0, 0, 0, 0.5f, texture));
+        scene.add(new Cube(0.5f, 0, 0, 0.5f, texture));
+        scene.add(new Cube(0.5f, 0, 0.5f, 0.5f, texture));
+        scene.add(new AmbientLight(0.1f));
+        scene.add(new DirectionalLight(-1.5f, -1f, -2.25f, 0.63f));
+        var frozen = (FrozenScene) scene.freeze();
+        // the same triangles without the pass
+        var raw = new SimpleScene();
+        for (var each : scene) {
+            if (each instanceof Cube cube) {
+                raw.addAll(List.<SceneObject>of(cube.triangles()));
+            } else {
+                raw.add(each);
+            }
+        }
+        var rawFrozen = (FrozenScene) raw.freeze();
+        Assertions.assertEquals(36, rawFrozen.triangles().length);
+        Assertions.assertEquals(28, frozen.triangles().length);
+        var fuzzyUp = new Vector3f(0, 0, 1);
+        var direction = new Vector3f(-1f, -1f, -1f / 1.27f).normalize();
+        var camera = new SimpleOrthogonalCamera(new Vector3f(4.01f, 4f, 4f / 1.27f), direction, 128, 128, 1.62f, 1.61f,
+                direction.cross(fuzzyUp.cross(direction), new Vector3f()).normalize());
+        var worker = new BVHRayTraceWorker();
+        var expected = (BufferedImage) camera.render(rawFrozen, worker);
+        var actual = (BufferedImage) camera.render(frozen, worker);
+        Assertions.assertArrayEquals(expected.getRGB(0, 0, 128, 128, null, 0, 128), actual.getRGB(0, 0, 128, 128, null, 0, 128));
+    }
+
+    private static int countFaces(Cuboid[] cuboids) {
+        var count = 0;
+        for (var cuboid : cuboids) {
+            for (var textureSize : cuboid.textureSizes()) {
+                if (textureSize.x != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,61 @@
+package cn.powernukkitx.pir.scene;
+
+import cn.powernukkitx.pir.object.geometry.Cube;
+import cn.powernukkitx.pir.object.geometry.Cuboid;
+import cn.powernukkitx.pir.object.light.AmbientLight;
+import cn.powernukkitx.pir.object.light.DirectionalLight;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+public class TextureAtlasTest {
+    @Test
+    public void sameTexelsAsTextures() {
+        var a = new int[]{1, 2, 3, 4, 5, 6};
+        var b = new int[]{7, 8, 9, 10};
+        var atlas = TextureAtlas.of(new int[][]{a, b, null, a}, new int[]{3, 2, 0, 3});
+        // a is packed once
+        Assertions.assertEquals(10, atlas.texels().length);
+        Assertions.assertEquals(atlas.offset(0), atlas.offset(3));
+        Assertions.assertEquals(6, atlas.texel(0, 2, 1));
+        Assertions.assertEquals(9, atlas.texel(1, 0, 1));
+        Assertions.assertEquals(10, atlas.texel(1, 3));
+        Assertions.assertEquals(4, atlas.texel(3, 0, 1));
+    }
+
+    @Test
+    public void sceneAtlasSameAsLitTextures() {
+        var texture = new BufferedImage(8, 4, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < 32; i++) {
+            texture.setRGB(i % 8, i / 8, 0xFF000000 | i * 0x050301);
+        }
+        var tmpScene = new SimpleScene();
+        tmpScene.add(new Cube(0, 0, 0, 1, texture));
+        tmpScene.add(new Cuboid(1, 0, 0, 0.5f, 1, 2, texture, new Cuboid.UVDetail[]{
+                new Cuboid.UVDetail(0, 0, 2, 4), new Cuboid.UVDetail(2, 0, 4, 4), new Cuboid.UVDetail(0, 0, 8, 4),
+                new Cuboid.UVDetail(0, 0, 2, 4), new Cuboid.UVDetail(2, 0, 4, 4), new Cuboid.UVDetail(0, 0, 8, 4)}));
+        tmpScene.add(new AmbientLight(0.1f));
+        tmpScene.add(new DirectionalLight(-1.5f, -1f, -2.25f, 0.63f));
+        var scene = (FrozenScene) tmpScene.freeze();
+        var triangles = scene.triangles();
+        var litTextures = scene.litTextures();
+        var atlas = scene.textureAtlas();
+        for (int i = 0; i < triangles.length; i++) {
+            var size = triangles[i].textureSize();
+            for (int y = 0; y < size.y; y++) {
+                for (int x = 0; x < size.x; x++) {
+                    Assertions.assertEquals(litTextures[i][x + y * size.x], atlas.texel(i, x, y));
+                }
+            }
+        }
+        var cuboids = scene.packedCuboids();
+        var cuboidLitTextures = scene.cuboidLitTextures();
+        var cuboidAtlas = scene.cuboidTextureAtlas();
+        for (int i = 0; i < cuboidLitTextures.length; i++) {
+            for (int j = 0; j < cuboids.textureWidth(i) * cuboids.textureHeight(i); j++) {
+                Assertions.assertEquals(cuboidLitTextures[i][j], cuboidAtlas.texel(i, j));
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package cn.powernukkitx.pir.scene;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+public class VoxelGridTest {
+    private static final float T = VoxelGrid.TEXEL_SIZE;
+
+    private static ArrayList<Integer> visitedPrimitives(VoxelGrid grid, Vector3f pos, Vector3f direction) {
+        var visited = new ArrayList<Integer>();
+        grid.traverse(pos, direction, 0, Float.POSITIVE_INFINITY, (g, from, to, tExit) -> {
+            for (int i = from; i < to; i++) {
+                visited.add(g.primitive(i));
+            }
+            return true;
+        });
+        return visited;
+    }
+
+    @Test
+    public void coarseCellsForLargeScenes() {
+        // two texel boxes 64 blocks apart, texel cells would be 1024 ^ 3
+        var bounds = new float[]{0, 0, 0, T, T, T, 64, 64, 64, 64 + T, 64 + T, 64 + T};
+        var grid = new VoxelGrid(bounds, T);
+        Assertions.assertTrue(grid.cellCount() <= VoxelGrid.MAX_CELLS, grid.cellCount() + " cells");
+        // grown by powers of 2, and a grid of half the cell size has too many cells
+        var scale = grid.cellSize() / T;
+        Assertions.assertTrue(scale > 1 && Integer.bitCount((int) scale) == 1 && scale == (int) scale, "cell size " + grid.cellSize());
+        Assertions.assertEquals(grid.cellSize(), new VoxelGrid(bounds, grid.cellSize() / 2).cellSize());
+        // both boxes are still found, from near to far
+        var visited = visitedPrimitives(grid, new Vector3f(-1, -1, -1), new Vector3f(1, 1, 1));
+        Assertions.assertEquals(0, visited.get(0));
+        Assertions.assertEquals(1, visited.get(visited.size() - 1));
+    }
+
+    @Test
+    public void primitiveInEveryCellItOverlaps() {
+        // a flat box of one block spans 16 x 16 texel cells, the workers skip the repeated visits with a mailbox
+        var grid = new VoxelGrid(new float[]{0, 0, 0, 1, 1, 0}, T);
+        Assertions.assertEquals(16 * 16, grid.cellCount());
+        var visited = visitedPrimitives(grid, new Vector3f(-1, 0.5f + T / 2, 0), new Vector3f(1, 0, 0));
+        Assertions.assertEquals(16, visited.size());
+        Assertions.assertTrue(visited.stream().allMatch(each -> each == 0));
+    }
+
+    @Test
+    public void rayStartingInsideGrid() {
+        var grid = new VoxelGrid(new float[]{0, 0, 0, 1, 1, 1}, T);
+        var x = 8 * T + T / 2;
+        var exits = new ArrayList<Float>();
+        grid.traverse(new Vector3f(x, 0.5f + T / 2, 0.5f + T / 2), new Vector3f(1, 0, 0), 0, Float.POSITIVE_INFINITY, (g, from, to, tExit) -> {
+            exits.add(tExit);
+            return true;
+        });
+        // from the cell of the origin to the last one, the cells behind the origin are skipped
+        Assertions.assertEquals(8, exits.size());
+        Assertions.assertEquals(9 * T - x, exits.get(0), 1e-6f);
+        Assertions.assertEquals(1 - x, exits.get(exits.size() - 1), 1e-6f);
+        // backwards, to the first cell
+        Assertions.assertEquals(9, visitedPrimitives(grid, new Vector3f(x, 0.5f, 0.5f), new Vector3f(-1, 0, 0)).size());
+    }
+}
@@ -0,0 +1,119 @@
+package cn.powernukkitx.pir.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BoundedCacheTest {
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        var cache = new BoundedCache<String, int[]>("test", 100, pixels -> 4L * pixels.length);
+        var a = cache.get("a", key -> new int[10]);
+        cache.get("b", key -> new int[10]);
+        Assertions.assertSame(a, cache.get("a", key -> new int[10]));
+        // 120 bytes, b is the least recently used one
+        cache.get("c", key -> new int[10]);
+        var stats = cache.stats();
+        Assertions.assertEquals(2, stats.entries());
+        Assertions.assertEquals(80, stats.bytes());
+        Assertions.assertEquals(1, stats.evictions());
+        Assertions.assertEquals(1, stats.hits());
+        Assertions.assertEquals(3, stats.misses());
+        Assertions.assertSame(a, cache.get("a", key -> new int[10]));
+        cache.setMaxBytes(0);
+        Assertions.assertEquals(0, cache.stats().bytes());
+    }
+
+    @Test
+    public void keysCountedByWeigher() {
+        var cache = new BoundedCache<int[], Boolean>("test", 1000, (pixels, value) -> 4L * pixels.length);
+        var first = new int[100];
+        cache.get(first, key -> true);
+        Assertions.assertEquals(400, cache.stats().bytes());
+        // the first key is evicted, so its pixels are no longer kept
+        cache.get(new int[200], key -> true);
+        Assertions.assertEquals(1, cache.stats().entries());
+        Assertions.assertEquals(800, cache.stats().bytes());
+        Assertions.assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    public void loadsOnce() throws Exception {
+        var cache = new BoundedCache<String, int[]>("test", 1 << 20, pixels -> 4L * pixels.length);
+        var loads = new AtomicInteger();
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var first = executor.submit(() -> cache.get("a", key -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return new int[1];
+            }));
+            Assertions.assertTrue(loading.await(10, TimeUnit.SECONDS));
+            var second = executor.submit(() -> cache.get("a", key -> {
+                loads.incrementAndGet();
+                return new int[1];
+            }));
+            // other keys are not blocked by the load
+            Assertions.assertEquals(2, cache.get("b", key -> new int[2]).length);
+            release.countDown();
+            Assertions.assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitingForLoadDoesNotBlockOtherKeys() throws Exception {
+        var cache = new BoundedCache<String, int[]>("test", 1 << 20, pixels -> 4L * pixels.length);
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(3);
+        try {
+            var slow = executor.submit(() -> cache.get("a", key -> {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return new int[1];
+            }));
+            Assertions.assertTrue(loading.await(10, TimeUnit.SECONDS));
+            // a hit on the key being loaded, it waits for the slow load
+            var waiting = executor.submit(() -> cache.get("a", key -> new int[1]));
+            while (cache.stats().hits() == 0) {
+                Thread.onSpinWait();
+            }
+            var other = executor.submit(() -> cache.get("b", key -> new int[2]));
+            Assertions.assertEquals(2, other.get(10, TimeUnit.SECONDS).length);
+            Assertions.assertFalse(waiting.isDone());
+            release.countDown();
+            Assertions.assertSame(slow.get(10, TimeUnit.SECONDS), waiting.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedLoadNotCached() {
+        var cache = new BoundedCache<String, int[]>("test", 1 << 20, pixels -> 4L * pixels.length);
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.get("a", key -> {
+            throw new IllegalStateException();
+        }));
+        Assertions.assertEquals(0, cache.stats().entries());
+        Assertions.assertEquals(3, cache.get("a", key -> new int[3]).length);
+    }
+}
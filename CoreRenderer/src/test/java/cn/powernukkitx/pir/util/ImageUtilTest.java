@@ -0,0 +1,73 @@
+package cn.powernukkitx.pir.util;
+
+import org.joml.Vector4f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+public class ImageUtilTest {
+    @Test
+    public void lightSameAsColorVector() {
+        var random = new Random(11);
+        var pixels = new int[1024];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        for (var lightIntensity : new float[]{0, 0.1f, 0.37f, 0.5f, 0.63f, 1}) {
+            var lit = ImageUtil.light(pixels, lightIntensity);
+            for (int i = 0; i < pixels.length; i++) {
+                var expected = ColorUtil.toColorVectorFloat(pixels[i], new Vector4f());
+                ColorUtil.setLightIntensityInHSB(expected, lightIntensity);
+                Assertions.assertEquals(expected, ColorUtil.toColorVectorFloat(lit[i], new Vector4f()));
+            }
+            Assertions.assertSame(lit, ImageUtil.light(pixels, lightIntensity));
+        }
+    }
+
+    @Test
+    public void internByContent() {
+        var random = new Random(22);
+        var first = new BufferedImage(16, 8, BufferedImage.TYPE_INT_ARGB);
+        var second = new BufferedImage(16, 8, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < 128; i++) {
+            var color = random.nextInt();
+            first.setRGB(i % 16, i / 16, color);
+            second.setRGB(i % 16, i / 16, color);
+        }
+        Assertions.assertSame(ImageUtil.getPixels(first), ImageUtil.getPixels(second));
+        // the same content with another size is another texture
+        Assertions.assertNotSame(ImageUtil.getPixels(first), ImageUtil.intern(ImageUtil.getPixels(first).clone(), 8, 16));
+        var slice = ImageUtil.slice(first, 4, 2, 4, 4);
+        var copy = new int[16];
+        for (int i = 0; i < 16; i++) {
+            copy[i] = first.getRGB(4 + i % 4, 2 + i / 4);
+        }
+        Assertions.assertSame(slice, ImageUtil.intern(copy, 4, 4));
+        Assertions.assertSame(ImageUtil.leftRightMirror(slice, 4, 4), ImageUtil.leftRightMirror(ImageUtil.intern(copy, 4, 4), 4, 4));
+        // mirrored twice gives the original array back
+        Assertions.assertSame(slice, ImageUtil.topBottomMirror(ImageUtil.topBottomMirror(slice, 4, 4), 4, 4));
+    }
+
+    @Test
+    public void opacity() {
+        Assertions.assertEquals(ImageUtil.Opacity.TRANSPARENT, ImageUtil.opacity(new int[]{0, 0x00FFFFFF}));
+        Assertions.assertEquals(ImageUtil.Opacity.OPAQUE, ImageUtil.opacity(new int[]{0xFF000000, 0xFFFFFFFF}));
+        Assertions.assertEquals(ImageUtil.Opacity.MIXED, ImageUtil.opacity(new int[]{0xFF000000, 0}));
+        Assertions.assertEquals(ImageUtil.Opacity.MIXED, ImageUtil.opacity(ImageUtil.FALLBACK_TEXTURE));
+    }
+
+    @Test
+    public void opacityWeighsPixels() {
+        var pixels = new int[4096];
+        var before = opacityBytes();
+        ImageUtil.opacity(pixels);
+        // the cache keeps the pixels alive as its key, so they count against its cap
+        Assertions.assertTrue(opacityBytes() - before >= 4L * pixels.length);
+    }
+
+    private static long opacityBytes() {
+        return ImageUtil.cacheStats().stream().filter(stats -> stats.name().equals("opacity")).findFirst().orElseThrow().bytes();
+    }
+}
@@ -0,0 +1,31 @@
+package cn.powernukkitx.pir.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class SortUtilTest {
+    @Test
+    public void sortRangeStable() {
+        var random = new Random(11);
+        for (var length : new int[]{0, 1, 32, 33, 100, 1000}) {
+            var keys = new int[length];
+            for (int i = 0; i < length; i++) {
+                keys[i] = random.nextInt(10);
+            }
+            // a range in the middle, the indices outside it keep their place
+            var array = new int[length + 40];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = i;
+            }
+            var expected = Arrays.stream(array).boxed().toArray(Integer[]::new);
+            SortUtil.IntComparator byKey = (o1, o2) -> Integer.compare(keys[o1 - 17], keys[o2 - 17]);
+            // Arrays.sort is stable
+            Arrays.sort(expected, 17, 17 + length, byKey::compare);
+            SortUtil.sort(array, 17, 17 + length, byKey);
+            Assertions.assertArrayEquals(Arrays.stream(expected).mapToInt(Integer::intValue).toArray(), array, "length " + length);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package cn.powernukkitx.pir.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+public class TextureStoreTest {
+    @TempDir
+    Path dir;
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    @Test
+    public void readsSavedTextures() throws IOException {
+        var leaves = dir.resolve("leaves.png");
+        var plank = dir.resolve("plank.png");
+        try (var input = Objects.requireNonNull(TextureStoreTest.class.getResourceAsStream("/textures/leaves.png"))) {
+            Files.copy(input, leaves);
+        }
+        try (var input = Objects.requireNonNull(TextureStoreTest.class.getResourceAsStream("/textures/plank.png"))) {
+            Files.copy(input, plank);
+        }
+        var expectedLeaves = pixels(ImageIO.read(leaves.toFile()));
+        var expectedPlank = pixels(ImageIO.read(plank.toFile()));
+        var file = dir.resolve("pack.textures");
+
+        var store = TextureStore.open(file, 42);
+        Assertions.assertArrayEquals(expectedLeaves, pixels(Objects.requireNonNull(store.readImage(leaves))));
+        store.save();
+        // the saved textures are read from the file, a new one is added to it
+        Files.delete(leaves);
+        store = TextureStore.open(file, 42);
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertArrayEquals(expectedLeaves, pixels(Objects.requireNonNull(store.readImage(leaves))));
+        Assertions.assertArrayEquals(expectedPlank, pixels(Objects.requireNonNull(store.readImage(plank))));
+        store.save();
+        Files.delete(plank);
+        store = TextureStore.open(file, 42);
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertArrayEquals(expectedLeaves, pixels(Objects.requireNonNull(store.readImage(leaves))));
+        Assertions.assertArrayEquals(expectedPlank, pixels(Objects.requireNonNull(store.readImage(plank))));
+
+        // another pack
+        Assertions.assertEquals(0, TextureStore.open(file, 43).size());
+    }
+
+    @Test
+    public void savedFileRemapped() throws IOException {
+        var leaves = dir.resolve("leaves.png");
+        try (var input = Objects.requireNonNull(TextureStoreTest.class.getResourceAsStream("/textures/leaves.png"))) {
+            Files.copy(input, leaves);
+        }
+        var expected = pixels(ImageIO.read(leaves.toFile()));
+        var file = dir.resolve("pack.textures");
+        var store = TextureStore.open(file, 42);
+        store.readImage(leaves);
+        store.save();
+        // the same store reads the texture from the saved file
+        Files.delete(leaves);
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertArrayEquals(expected, pixels(Objects.requireNonNull(store.readImage(leaves))));
+        // nothing new, nothing written
+        Files.delete(file);
+        store.save();
+        Assertions.assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void brokenFileIgnored() throws IOException {
+        var file = dir.resolve("pack.textures");
+        Files.write(file, new byte[]{0x50, 0x49, 0x52, 0x54, 1, 0, 0, 0, 42, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 100, 0});
+        Assertions.assertEquals(0, TextureStore.open(file, 42).size());
+        Assertions.assertEquals(0, TextureStore.open(dir.resolve("missing"), 42).size());
+    }
+}
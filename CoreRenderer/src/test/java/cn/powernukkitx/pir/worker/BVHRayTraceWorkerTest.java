@@ -0,0 +1,135 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.object.geometry.Cube;
+import cn.powernukkitx.pir.object.geometry.Cuboid;
+import cn.powernukkitx.pir.object.geometry.Material;
+import cn.powernukkitx.pir.object.light.AmbientLight;
+import cn.powernukkitx.pir.object.light.DirectionalLight;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.SimpleScene;
+import cn.powernukkitx.pir.util.ColorUtil;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+public class BVHRayTraceWorkerTest {
+    static FrozenScene makeScene() throws IOException {
+        var plank = ImageIO.read(Objects.requireNonNull(BVHRayTraceWorkerTest.class.getResourceAsStream("/textures/plank.png")));
+        var leaves = ImageIO.read(Objects.requireNonNull(BVHRayTraceWorkerTest.class.getResourceAsStream("/textures/leaves.png")));
+        var uv = new Cuboid.UVDetail[6];
+        var tmpScene = new SimpleScene();
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                for (int k = 0; k < 6; k++) {
+                    uv[k] = new Cuboid.UVDetail(i * 2, j * 2, 8, 8);
+                }
+                tmpScene.add(new Cuboid(-0.375f + i * 0.25f, -0.375f + j * 0.25f, -0.4f + (i + j) * 0.05f,
+                        0.25f, 0.25f, 0.1f + i * 0.05f, plank, uv));
+            }
+        }
+        tmpScene.add(new Cube(0, 0, 0.3f, 0.4f, leaves));
+        tmpScene.add(new AmbientLight(0.1f));
+        tmpScene.add(new DirectionalLight(-1.5f, -1f, -2.25f, 0.63f));
+        return (FrozenScene) tmpScene.freeze();
+    }
+
+    static Vector3f[][] makeRays(int size) {
+        var direction = new Vector3f(-1f, -1f, -1f / 1.27f).normalize();
+        var right = direction.cross(new Vector3f(0, 0, 1), new Vector3f()).normalize();
+        var up = right.cross(direction, new Vector3f()).normalize();
+        var positions = new Vector3f[size * size];
+        var directions = new Vector3f[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                positions[y * size + x] = new Vector3f(4f, 4f, 4f / 1.27f)
+                        .add(up.mul((y - size / 2f) * 1.6f / size, new Vector3f()))
+                        .add(right.mul((x - size / 2f) * 1.6f / size, new Vector3f()));
+                directions[y * size + x] = direction;
+            }
+        }
+        return new Vector3f[][]{positions, directions};
+    }
+
+    @Test
+    public void sameAsSimpleWorker() throws IOException {
+        var scene = makeScene();
+        var rays = makeRays(96);
+        for (var singleSided : new boolean[]{false, true}) {
+            var expected = scene.rayTrace(rays[0], rays[1], new SimpleRayTraceWorker(singleSided));
+            var actual = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(singleSided));
+            Assertions.assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void earlyRayTerminationSameAsSimpleWorker() throws IOException {
+        var scene = makeScene();
+        var rays = makeRays(96);
+        for (var singleSided : new boolean[]{false, true}) {
+            var expected = scene.rayTrace(rays[0], rays[1], new SimpleRayTraceWorker(singleSided));
+            var actual = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(singleSided, true));
+            Assertions.assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void rayTraceIntoSameAsColors() throws IOException {
+        var scene = makeScene();
+        var size = 64;
+        var rays = makeRays(size);
+        for (var worker : new RayTraceWorker[]{new SimpleRayTraceWorker(), new BVHRayTraceWorker(),
+                new BVHRayTraceWorker(true, true), new DeferredRayTraceWorker()}) {
+            var colors = scene.rayTrace(rays[0], rays[1], worker);
+            // write the rows bottom-up into the middle of a wider image
+            var stride = size + 3;
+            var pixels = new int[stride * size];
+            worker.rayTraceInto(pixels, (size - 1) * stride + 2, -stride, size, rays[0], rays[1], scene);
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    Assertions.assertEquals(ColorUtil.toInt(colors[y * size + x]), pixels[(size - 1 - y) * stride + 2 + x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void doubleSidedMaterials() throws IOException {
+        var leaves = ImageIO.read(Objects.requireNonNull(BVHRayTraceWorkerTest.class.getResourceAsStream("/textures/leaves.png")));
+        var textures = new BufferedImage[]{leaves, leaves, leaves, leaves, leaves, leaves};
+        var doubleSided = new Material[6];
+        Arrays.fill(doubleSided, Material.DOUBLE_SIDED);
+        var rays = makeRays(64);
+        var results = new Vector4f[2][];
+        for (var material : new Material[][]{Material.defaultFaces(), doubleSided}) {
+            var tmpScene = new SimpleScene();
+            tmpScene.add(new Cube(0, 0, 0.3f, 0.4f, textures, material));
+            tmpScene.add(new AmbientLight(0.1f));
+            var scene = (FrozenScene) tmpScene.freeze();
+            var singleSided = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(true));
+            Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new SimpleRayTraceWorker(true)), singleSided);
+            results[material == doubleSided ? 1 : 0] = singleSided;
+            if (material == doubleSided) {
+                // the back faces of double-sided faces are seen by single-sided workers as well
+                Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(false)), singleSided);
+            }
+        }
+        Assertions.assertFalse(Arrays.equals(results[0], results[1]));
+    }
+
+    @Test
+    public void emptyScene() {
+        var scene = (FrozenScene) new SimpleScene().freeze();
+        var rays = makeRays(4);
+        var result = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker());
+        for (var color : result) {
+            Assertions.assertEquals(scene.getDefaultColor(), color);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.functor.PackedCuboids;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.SimpleScene;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+public class CuboidRayTraceWorkerTest {
+    // the margin in texels and in face coordinates around a border, and in distance between two hits
+    private static final double MARGIN = 1e-4;
+
+    @Test
+    public void sameAsBVHWorkerOffBorders() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        Assertions.assertTrue(scene.isCuboidsOnly());
+        var size = 128;
+        var rays = BVHRayTraceWorkerTest.makeRays(size);
+        var ambiguous = ambiguousRays(scene, rays[0], rays[1]);
+        var ambiguousCount = 0;
+        for (var each : ambiguous) {
+            if (each) ambiguousCount++;
+        }
+        // the borders are thin lines, most of the image must be compared
+        Assertions.assertTrue(ambiguousCount < ambiguous.length / 50, ambiguousCount + " ambiguous rays");
+        for (var singleSided : new boolean[]{false, true}) {
+            var expected = new int[size * size];
+            new BVHRayTraceWorker(singleSided).rayTraceInto(expected, 0, size, size, rays[0], rays[1], scene);
+            var actual = new int[size * size];
+            new CuboidRayTraceWorker(singleSided).rayTraceInto(actual, 0, size, size, rays[0], rays[1], scene);
+            for (int i = 0; i < expected.length; i++) {
+                if (!ambiguous[i]) {
+                    Assertions.assertEquals(expected[i], actual[i], "pixel " + i + ", singleSided " + singleSided);
+                }
+            }
+        }
+    }
+
+    /**
+     * A ray is ambiguous if one of its visible face hits lies within {@link #MARGIN} of a texel border, which includes the box edges,
+     * or of a face diagonal, where the two triangles of a face meet, or if it is at the same distance as the next hit.
+     * The two workers round the face coordinates and order the tied hits differently there, so only these pixels may differ.
+     * The hits behind a face with no transparent texel are never visible.
+     * They are calculated here in double precision with a slab test of their own.
+     */
+    private static boolean[] ambiguousRays(FrozenScene scene, Vector3f[] positions, Vector3f[] directions) {
+        var cuboids = scene.packedCuboids();
+        var bounds = cuboids.bounds(0);
+        var minFaces = new int[]{PackedCuboids.BACK, PackedCuboids.LEFT, PackedCuboids.DOWN};
+        var maxFaces = new int[]{PackedCuboids.FRONT, PackedCuboids.RIGHT, PackedCuboids.UP};
+        var result = new boolean[positions.length];
+        for (int r = 0; r < positions.length; r++) {
+            var pos = new double[]{positions[r].x, positions[r].y, positions[r].z};
+            var direction = new double[]{directions[r].x, directions[r].y, directions[r].z};
+            // distance, face id, ambiguous
+            var hits = new ArrayList<double[]>();
+            for (int i = 0; i < cuboids.size(); i++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    for (var atMax : new boolean[]{false, true}) {
+                        var faceId = i * PackedCuboids.FACES + (atMax ? maxFaces[axis] : minFaces[axis]);
+                        if (direction[axis] == 0 || cuboids.textureWidth(faceId) == 0) {
+                            continue;
+                        }
+                        var t = (bounds[i * 6 + axis + (atMax ? 3 : 0)] - pos[axis]) / direction[axis];
+                        // the coordinates of the hit on the plane of the face, in [0, 1] inside the face
+                        var a = faceCoordinate(bounds, i, (axis + 1) % 3, pos, direction, t);
+                        var b = faceCoordinate(bounds, i, (axis + 2) % 3, pos, direction, t);
+                        if (t < -MARGIN || a < -MARGIN || a > 1 + MARGIN || b < -MARGIN || b > 1 + MARGIN) {
+                            continue;
+                        }
+                        // the texture may be rotated on the face, so both coordinates are checked against both sizes
+                        var width = cuboids.textureWidth(faceId);
+                        var height = cuboids.textureHeight(faceId);
+                        var ambiguous = nearTexelBorder(a, width) || nearTexelBorder(a, height)
+                                || nearTexelBorder(b, width) || nearTexelBorder(b, height)
+                                || Math.abs(a - b) < MARGIN || Math.abs(a + b - 1) < MARGIN;
+                        hits.add(new double[]{t, faceId, ambiguous ? 1 : 0});
+                    }
+                }
+            }
+            hits.sort(Comparator.comparingDouble(hit -> hit[0]));
+            for (int j = 0; j < hits.size() && !result[r]; j++) {
+                var hit = hits.get(j);
+                result[r] = hit[2] != 0 || j + 1 < hits.size() && hits.get(j + 1)[0] - hit[0] < MARGIN;
+                if (isOpaque(scene.cuboidLitTextures()[(int) hit[1]])) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isOpaque(int[] texture) {
+        for (var argb : texture) {
+            if (argb >>> 24 != 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double faceCoordinate(float[] bounds, int index, int axis, double[] pos, double[] direction, double t) {
+        var min = bounds[index * 6 + axis];
+        var max = bounds[index * 6 + axis + 3];
+        return (pos[axis] + direction[axis] * t - min) / (max - min);
+    }
+
+    private static boolean nearTexelBorder(double coordinate, int texels) {
+        var texel = coordinate * texels;
+        return Math.abs(texel - Math.rint(texel)) < MARGIN * texels;
+    }
+
+    @Test
+    public void fallbackForLooseTriangles() throws IOException {
+        var tmpScene = new SimpleScene();
+        tmpScene.addAll(BVHRayTraceWorkerTest.makeScene());
+        tmpScene.add(new Triangle(-0.5f, -0.5f, 0.5f, 0.5f, -0.5f, 0.6f, 0, 0.5f, 0.55f));
+        var scene = (FrozenScene) tmpScene.freeze();
+        Assertions.assertFalse(scene.isCuboidsOnly());
+        var rays = BVHRayTraceWorkerTest.makeRays(48);
+        Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker()),
+                scene.rayTrace(rays[0], rays[1], new CuboidRayTraceWorker()));
+    }
+
+    @Test
+    public void emptyScene() {
+        var scene = (FrozenScene) new SimpleScene().freeze();
+        var rays = BVHRayTraceWorkerTest.makeRays(4);
+        for (var color : scene.rayTrace(rays[0], rays[1], new CuboidRayTraceWorker())) {
+            Assertions.assertEquals(scene.getDefaultColor(), color);
+        }
+    }
+}
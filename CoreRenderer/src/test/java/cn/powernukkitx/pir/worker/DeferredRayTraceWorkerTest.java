@@ -0,0 +1,162 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.functor.JavaTriangleFunctor;
+import cn.powernukkitx.pir.object.camera.RayGrid;
+import cn.powernukkitx.pir.object.geometry.Cube;
+import cn.powernukkitx.pir.object.light.AmbientLight;
+import cn.powernukkitx.pir.object.light.DirectionalLight;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.SimpleScene;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.joml.Vector3f;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Objects;
+
+public class DeferredRayTraceWorkerTest {
+    private static FrozenScene makeCubeScene(BufferedImage texture) {
+        return makeCubeScene(texture, 0.63f);
+    }
+
+    private static FrozenScene makeCubeScene(BufferedImage texture, float lightIntensity) {
+        var tmpScene = new SimpleScene();
+        tmpScene.add(new Cube(0, 0, 0, 0.5f, texture));
+        tmpScene.add(new AmbientLight(0.1f));
+        tmpScene.add(new DirectionalLight(-1.5f, -1f, -2.25f, lightIntensity));
+        return (FrozenScene) tmpScene.freeze();
+    }
+
+    @Test
+    public void sameAsBVHWorker() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var rays = BVHRayTraceWorkerTest.makeRays(96);
+        for (var singleSided : new boolean[]{false, true}) {
+            var expected = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(singleSided));
+            // the first render traces, the second one is shaded from the cache
+            Assertions.assertArrayEquals(expected, scene.rayTrace(rays[0], rays[1], new DeferredRayTraceWorker(singleSided)));
+            Assertions.assertArrayEquals(expected, scene.rayTrace(rays[0], rays[1], new DeferredRayTraceWorker(singleSided)));
+        }
+    }
+
+    @Test
+    public void retexture() throws IOException {
+        var plank = ImageIO.read(Objects.requireNonNull(DeferredRayTraceWorkerTest.class.getResourceAsStream("/textures/plank.png")));
+        var leaves = ImageIO.read(Objects.requireNonNull(DeferredRayTraceWorkerTest.class.getResourceAsStream("/textures/leaves.png")));
+        var rays = BVHRayTraceWorkerTest.makeRays(64);
+        var worker = new DeferredRayTraceWorker(true);
+        makeCubeScene(plank).rayTrace(rays[0], rays[1], worker);
+        var cacheSize = DeferredRayTraceWorker.cacheSize();
+        // same geometry, new texture: no new G-buffer, but the colors of the new texture
+        var scene = makeCubeScene(leaves);
+        var actual = scene.rayTrace(rays[0], rays[1], worker);
+        Assertions.assertEquals(cacheSize, DeferredRayTraceWorker.cacheSize());
+        Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(true)), actual);
+    }
+
+    @Test
+    public void relight() throws IOException {
+        var plank = ImageIO.read(Objects.requireNonNull(DeferredRayTraceWorkerTest.class.getResourceAsStream("/textures/plank.png")));
+        var rays = BVHRayTraceWorkerTest.makeRays(64);
+        var worker = new DeferredRayTraceWorker(true);
+        makeCubeScene(plank).rayTrace(rays[0], rays[1], worker);
+        var cacheSize = DeferredRayTraceWorker.cacheSize();
+        // same geometry, new lights: no new G-buffer, the light is in the lit textures of the scene
+        var scene = makeCubeScene(plank, 0.9f);
+        var actual = scene.rayTrace(rays[0], rays[1], worker);
+        Assertions.assertEquals(cacheSize, DeferredRayTraceWorker.cacheSize());
+        Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(true)), actual);
+    }
+
+    @Test
+    public void sharedAcrossTriangleOrders() throws IOException {
+        var rays = BVHRayTraceWorkerTest.makeRays(64);
+        var worker = new DeferredRayTraceWorker();
+        BVHRayTraceWorkerTest.makeScene().rayTrace(rays[0], rays[1], worker);
+        var cacheSize = DeferredRayTraceWorker.cacheSize();
+        // the same shapes in a new scene, the order of the triangles may differ
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var actual = scene.rayTrace(rays[0], rays[1], worker);
+        Assertions.assertEquals(cacheSize, DeferredRayTraceWorker.cacheSize());
+        Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker()), actual);
+    }
+
+    @Test
+    public void gridWindowsCached() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var direction = new Vector3f(-1f, -1f, -1f / 1.27f).normalize();
+        var right = direction.cross(new Vector3f(0, 0, 1), new Vector3f()).normalize();
+        var up = right.cross(direction, new Vector3f()).normalize();
+        var grid = new RayGrid(new Vector3f(3.2f, 3.2f, 2.4f), right.mul(1.6f / 64), up.mul(1.6f / 64), direction, 64, 64);
+        var positions = new Vector3f[64 * 32];
+        var directions = new Vector3f[64 * 32];
+        var worker = new DeferredRayTraceWorker();
+        for (var startY : new int[]{0, 32}) {
+            grid.fill(0, startY, 64, 32, positions, directions);
+            var expected = new int[64 * 32];
+            new BVHRayTraceWorker().rayTraceInto(expected, 0, 64, 64, positions, directions, scene);
+            var actual = new int[64 * 32];
+            worker.rayTraceGridInto(new RenderContext(), actual, 0, 64, grid, 0, startY, 64, 32, positions, directions, scene);
+            Assertions.assertArrayEquals(expected, actual);
+            // the same window again is shaded from the cache
+            var cacheSize = DeferredRayTraceWorker.cacheSize();
+            var hits = DeferredRayTraceWorker.cacheStats().hits();
+            worker.rayTraceGridInto(new RenderContext(), actual, 0, 64, grid, 0, startY, 64, 32, positions, directions, scene);
+            Assertions.assertArrayEquals(expected, actual);
+            Assertions.assertEquals(cacheSize, DeferredRayTraceWorker.cacheSize());
+            Assertions.assertEquals(hits + 1, DeferredRayTraceWorker.cacheStats().hits());
+        }
+    }
+
+    @Test
+    public void cacheBounded() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var rays = BVHRayTraceWorkerTest.makeRays(32);
+        var maxBytes = DeferredRayTraceWorker.cacheStats().maxBytes();
+        try {
+            DeferredRayTraceWorker.setCacheMaxBytes(0);
+            // nothing is kept, but the renders are still right
+            Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker()),
+                    scene.rayTrace(rays[0], rays[1], new DeferredRayTraceWorker()));
+            Assertions.assertEquals(0, DeferredRayTraceWorker.cacheSize());
+            Assertions.assertEquals(0, DeferredRayTraceWorker.cacheStats().bytes());
+        } finally {
+            DeferredRayTraceWorker.setCacheMaxBytes(maxBytes);
+        }
+    }
+
+    @Test
+    public void notSharedAcrossFunctors() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var rays = BVHRayTraceWorkerTest.makeRays(32);
+        scene.rayTrace(rays[0], rays[1], new DeferredRayTraceWorker(false, new JavaTriangleFunctor()));
+        var cacheSize = DeferredRayTraceWorker.cacheSize();
+        // another functor class traces its own G-buffer
+        var actual = scene.rayTrace(rays[0], rays[1], new DeferredRayTraceWorker(false, new JavaTriangleFunctor() {
+        }));
+        Assertions.assertEquals(cacheSize + 1, DeferredRayTraceWorker.cacheSize());
+        Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker()), actual);
+    }
+
+    @Test
+    public void otherGeometryNotShared() throws IOException {
+        var plank = ImageIO.read(Objects.requireNonNull(DeferredRayTraceWorkerTest.class.getResourceAsStream("/textures/plank.png")));
+        var rays = BVHRayTraceWorkerTest.makeRays(32);
+        var worker = new DeferredRayTraceWorker(true);
+        var scene = makeCubeScene(plank);
+        scene.rayTrace(rays[0], rays[1], worker);
+        // computed once per scene
+        Assertions.assertSame(scene.canonicalGeometry(), scene.canonicalGeometry());
+        var cacheSize = DeferredRayTraceWorker.cacheSize();
+        var tmpScene = new SimpleScene();
+        tmpScene.add(new Cube(0.25f, 0, 0, 0.5f, plank));
+        tmpScene.add(new AmbientLight(0.1f));
+        var moved = (FrozenScene) tmpScene.freeze();
+        Assertions.assertNotEquals(scene.canonicalGeometry(), moved.canonicalGeometry());
+        var actual = moved.rayTrace(rays[0], rays[1], worker);
+        Assertions.assertEquals(cacheSize + 1, DeferredRayTraceWorker.cacheSize());
+        Assertions.assertArrayEquals(moved.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(true)), actual);
+    }
+}
@@ -0,0 +1,61 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.object.camera.SimpleOrthogonalCamera;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.SimpleScene;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+public class RasterizingWorkerTest {
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static SimpleOrthogonalCamera makeCamera(int width, int height) {
+        var fuzzyUp = new Vector3f(0, 0, 1);
+        var direction = new Vector3f(-1f, -1f, -1f / 1.27f).normalize();
+        return new SimpleOrthogonalCamera(new Vector3f(4.01f, 4f, 4f / 1.27f),
+                direction,
+                width, height, 1.62f, 1.61f,
+                direction.cross(fuzzyUp.cross(direction), new Vector3f()).normalize());
+    }
+
+    @Test
+    public void sameAsRayTracing() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var camera = makeCamera(160, 120);
+        for (var singleSided : new boolean[]{false, true}) {
+            var expected = pixels((BufferedImage) camera.render(scene, new BVHRayTraceWorker(singleSided)));
+            Assertions.assertArrayEquals(expected, pixels((BufferedImage) camera.render(scene, new RasterizingWorker(singleSided))));
+            Assertions.assertArrayEquals(expected, pixels((BufferedImage) camera.render(scene, new RasterizingWorker(singleSided), 16)));
+        }
+    }
+
+    @Test
+    public void notAGrid() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var rays = BVHRayTraceWorkerTest.makeRays(32);
+        // shuffle the rays, they are no longer a grid and must be ray traced
+        var positions = rays[0].clone();
+        for (int i = 0; i < positions.length; i += 2) {
+            var tmp = positions[i];
+            positions[i] = positions[positions.length - 1 - i];
+            positions[positions.length - 1 - i] = tmp;
+        }
+        Assertions.assertArrayEquals(scene.rayTrace(positions, rays[1], new BVHRayTraceWorker()),
+                new RasterizingWorker().rayTraceGrid(positions, rays[1], 32, 32, scene));
+    }
+
+    @Test
+    public void emptyScene() {
+        var scene = (FrozenScene) new SimpleScene().freeze();
+        var image = (BufferedImage) makeCamera(8, 8).render(scene, new RasterizingWorker());
+        for (var pixel : pixels(image)) {
+            Assertions.assertEquals(0, pixel);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cn.powernukkitx.pir.worker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class RenderContextTest {
+    @Test
+    public void growKeepsContents() {
+        var context = new RenderContext();
+        var ints = context.ints(0, 4);
+        ints[3] = 42;
+        var grown = context.ints(0, 5);
+        Assertions.assertTrue(grown.length >= 5);
+        Assertions.assertEquals(42, grown[3]);
+        Assertions.assertSame(grown, context.ints(0, 2));
+    }
+
+    @Test
+    public void trimToByteCap() {
+        var context = new RenderContext(1024);
+        context.ints(0, 64);
+        context.ints(1, 1000);
+        Assertions.assertEquals(1064 * Integer.BYTES, context.retainedBytes());
+        context.trim();
+        // the largest buffer is dropped
+        Assertions.assertEquals(64 * Integer.BYTES, context.retainedBytes());
+        Assertions.assertEquals(1064 * Integer.BYTES, context.highWaterMark());
+        context.release();
+        Assertions.assertEquals(0, context.retainedBytes());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RenderContext(-1));
+    }
+
+    @Test
+    public void reuseSameAsFresh() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var size = 48;
+        var rays = BVHRayTraceWorkerTest.makeRays(size);
+        // a zero cap drops every buffer when trimmed
+        for (var context : new RenderContext[]{new RenderContext(), new RenderContext(0)}) {
+            for (var worker : new RayTraceWorker[]{new BVHRayTraceWorker(), new DeferredRayTraceWorker(), new RasterizingWorker()}) {
+                var expected = new int[size * size];
+                worker.rayTraceInto(expected, 0, size, size, rays[0], rays[1], scene);
+                for (int i = 0; i < 2; i++) {
+                    var pixels = new int[size * size];
+                    worker.rayTraceInto(context, pixels, 0, size, size, rays[0], rays[1], scene);
+                    context.trim();
+                    Assertions.assertArrayEquals(expected, pixels);
+                }
+            }
+            Assertions.assertTrue(context.retainedBytes() <= context.byteCap());
+            Assertions.assertTrue(context.highWaterMark() > 0);
+        }
+    }
+}
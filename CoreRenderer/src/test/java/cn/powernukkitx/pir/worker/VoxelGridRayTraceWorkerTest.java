@@ -0,0 +1,127 @@
+package cn.powernukkitx.pir.worker;
+
+import cn.powernukkitx.pir.object.geometry.Cube;
+import cn.powernukkitx.pir.object.geometry.Triangle;
+import cn.powernukkitx.pir.object.light.AmbientLight;
+import cn.powernukkitx.pir.scene.FrozenScene;
+import cn.powernukkitx.pir.scene.SimpleScene;
+import cn.powernukkitx.pir.scene.VoxelGrid;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Objects;
+
+public class VoxelGridRayTraceWorkerTest {
+    @Test
+    public void sameAsBVHWorker() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        Assertions.assertNotNull(scene.voxelGrid());
+        var rays = BVHRayTraceWorkerTest.makeRays(96);
+        for (var singleSided : new boolean[]{false, true}) {
+            var expected = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(singleSided));
+            var actual = scene.rayTrace(rays[0], rays[1], new VoxelGridRayTraceWorker(singleSided));
+            Assertions.assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void axisParallelRays() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var size = 64;
+        var positions = new Vector3f[size * size * 3];
+        var directions = new Vector3f[size * size * 3];
+        // rays along each axis, some of them run exactly on the cell faces
+        for (int axis = 0; axis < 3; axis++) {
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    var i = (axis * size + y) * size + x;
+                    var a = -0.5f + x / 32f;
+                    var b = -0.5f + y / 32f;
+                    positions[i] = axis == 0 ? new Vector3f(2, a, b) : axis == 1 ? new Vector3f(a, -2, b) : new Vector3f(a, b, 2);
+                    directions[i] = axis == 0 ? new Vector3f(-1, 0, 0) : axis == 1 ? new Vector3f(0, 1, 0) : new Vector3f(0, 0, -1);
+                }
+            }
+        }
+        var expected = scene.rayTrace(positions, directions, new BVHRayTraceWorker());
+        var actual = scene.rayTrace(positions, directions, new VoxelGridRayTraceWorker());
+        Assertions.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void raysStartingInsideGrid() throws IOException {
+        var scene = BVHRayTraceWorkerTest.makeScene();
+        var rays = BVHRayTraceWorkerTest.makeRays(96);
+        // move the origins into the middle of the scene, the triangles behind them are not hit
+        for (int i = 0; i < rays[0].length; i++) {
+            rays[0][i] = rays[1][i].mul(6.3f, new Vector3f()).add(rays[0][i]);
+        }
+        for (var singleSided : new boolean[]{false, true}) {
+            var expected = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(singleSided));
+            var actual = scene.rayTrace(rays[0], rays[1], new VoxelGridRayTraceWorker(singleSided));
+            Assertions.assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void trianglesInManyCellsHitOnce() {
+        // each face of the cube is in 16 x 16 x 2 cells, a translucent face hit twice would be composited twice
+        var texture = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < 256; i++) {
+            texture.setRGB(i % 16, i / 16, 0x80000000 | (i * 0x0F0B07 & 0xFFFFFF));
+        }
+        var tmpScene = new SimpleScene();
+        tmpScene.add(new Cube(0, 0, 0, 1, texture));
+        tmpScene.add(new AmbientLight(0.1f));
+        var scene = (FrozenScene) tmpScene.freeze();
+        var rays = BVHRayTraceWorkerTest.makeRays(48);
+        var expected = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker());
+        Assertions.assertArrayEquals(expected, scene.rayTrace(rays[0], rays[1], new VoxelGridRayTraceWorker()));
+        Assertions.assertNotEquals(scene.getDefaultColor(), expected[expected.length / 2 + 24]);
+    }
+
+    @Test
+    public void coarseGridSameAsBVHWorker() throws IOException {
+        var tmpScene = new SimpleScene();
+        tmpScene.addAll(BVHRayTraceWorkerTest.makeScene());
+        // a cube far out of view makes the grid too large for texel cells
+        var texture = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        texture.setRGB(0, 0, 0xFF808080);
+        tmpScene.add(new Cube(40, -40, 0, 1, texture));
+        var scene = (FrozenScene) tmpScene.freeze();
+        Assertions.assertTrue(Objects.requireNonNull(scene.voxelGrid()).cellSize() > VoxelGrid.TEXEL_SIZE);
+        var rays = BVHRayTraceWorkerTest.makeRays(96);
+        for (var singleSided : new boolean[]{false, true}) {
+            var expected = scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker(singleSided));
+            var actual = scene.rayTrace(rays[0], rays[1], new VoxelGridRayTraceWorker(singleSided));
+            Assertions.assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void fallbackForSlopedTriangles() throws IOException {
+        var tmpScene = new SimpleScene();
+        tmpScene.addAll(BVHRayTraceWorkerTest.makeScene());
+        var texture = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        texture.setRGB(0, 0, 4, 4, new int[]{0xFF808080, 0x80FF0000, 0xFF00FF00, 0, 0xFF0000FF, 0xFF808080, 0x80FF0000, 0xFF00FF00,
+                0, 0xFF0000FF, 0xFF808080, 0x80FF0000, 0xFF00FF00, 0, 0xFF0000FF, 0xFF808080}, 0, 4);
+        tmpScene.add(new Triangle(-0.5f, -0.5f, 0.5f, 0.5f, -0.5f, 0.6f, 0, 0.5f, 0.55f, texture));
+        tmpScene.add(new AmbientLight(0.1f));
+        var scene = (FrozenScene) tmpScene.freeze();
+        Assertions.assertNull(scene.voxelGrid());
+        var rays = BVHRayTraceWorkerTest.makeRays(48);
+        Assertions.assertArrayEquals(scene.rayTrace(rays[0], rays[1], new BVHRayTraceWorker()),
+                scene.rayTrace(rays[0], rays[1], new VoxelGridRayTraceWorker()));
+    }
+
+    @Test
+    public void emptyScene() {
+        var scene = (FrozenScene) new SimpleScene().freeze();
+        var rays = BVHRayTraceWorkerTest.makeRays(4);
+        for (var color : scene.rayTrace(rays[0], rays[1], new VoxelGridRayTraceWorker())) {
+            Assertions.assertEquals(scene.getDefaultColor(), color);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package cn.powernukkitx.pir.bedrock;
 
+import cn.powernukkitx.pir.object.geometry.Material;
 import cn.powernukkitx.pir.scene.Scene;
 import org.jetbrains.annotations.NotNull;
 import org.joml.Vector3f;
@@ -16,8 +17,12 @@ public record JsonModel(
         @NotNull JsonModelBone @NotNull [] bones
 ) {
     public void applyToScene(@NotNull Scene scene, @NotNull BufferedImage texture) {
+        applyToScene(scene, texture, Material.OPAQUE);
+    }
+
+    public void applyToScene(@NotNull Scene scene, @NotNull BufferedImage texture, @NotNull Material material) {
         for (var bone : bones) {
-            bone.applyToScene(scene, texture);
+            bone.applyToScene(scene, texture, material);
         }
     }
 }
@@ -1,6 +1,7 @@
 package cn.powernukkitx.pir.bedrock;
 
 import cn.powernukkitx.pir.object.geometry.Cuboid;
+import cn.powernukkitx.pir.object.geometry.Material;
 import cn.powernukkitx.pir.scene.Scene;
 import org.jetbrains.annotations.NotNull;
 import org.joml.Vector3f;
@@ -14,6 +15,22 @@ public record JsonModelBone(
         @NotNull JsonModelCuboid @NotNull [] cubes
 ) {
     public void applyToScene(@NotNull Scene scene, @NotNull BufferedImage texture) {
+        applyToScene(scene, texture, Material.OPAQUE);
+    }
+
+    /**
+     * @param material the material of all the faces of the cubes
+     */
+    public void applyToScene(@NotNull Scene scene, @NotNull BufferedImage texture, @NotNull Material material) {
+        var materials = new Material[6];
+        Arrays.fill(materials, material);
+        applyToScene(scene, texture, materials);
+    }
+
+    /**
+     * @param materials the materials of the faces of the cubes, in the cuboid face order, see {@link JsonModelUVSet#FACE_NAMES}
+     */
+    public void applyToScene(@NotNull Scene scene, @NotNull BufferedImage texture, @NotNull Material @NotNull [] materials) {
         var modelHeight = (float) (Arrays.stream(cubes).mapToDouble(each -> each.origin().y + each.size().y).max().orElse(0)
                 - Arrays.stream(cubes).mapToDouble(each -> each.origin().y).min().orElse(0));
         for (var cuboidData : cubes) {
@@ -22,7 +39,7 @@ public record JsonModelBone(
             var centerY = -(cuboidData.origin().z + Math.max(cuboidData.size().z, 1f) / 2);
             scene.add(new Cuboid(centerX / 16, centerY / 16, centerZ / 16,
                     cuboidData.size().x / 16, Math.max(cuboidData.size().z, 1f) / 16, cuboidData.size().y / 16,
-                    texture, cuboidData.uvSet().toArray()));
+                    texture, cuboidData.uvSet().toArray(), materials));
         }
     }
 }
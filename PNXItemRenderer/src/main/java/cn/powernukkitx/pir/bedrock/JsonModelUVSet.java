@@ -11,6 +11,11 @@ public record JsonModelUVSet(
         @NotNull Cuboid.UVDetail up,
         @NotNull Cuboid.UVDetail down
 ) {
+    /**
+     * The names of the faces in material_instances, in the order of {@link #toArray()}, the order of the cuboid faces.
+     */
+    public static final String[] FACE_NAMES = {"down", "north", "east", "south", "west", "up"};
+
     public @NotNull Cuboid.UVDetail @NotNull [] toArray() {
         // Down Right Back Left Front Up
         // 正确的右手系逻辑顺序：down, north, west, south, east, up
@@ -14,16 +14,20 @@ import cn.nukkit.item.customitem.CustomItem;
 import cn.nukkit.item.customitem.data.ItemCreativeCategory;
 import cn.nukkit.nbt.tag.CompoundTag;
 import cn.powernukkitx.pir.PNXPluginMain;
+import cn.powernukkitx.pir.bedrock.JsonModelUVSet;
 import cn.powernukkitx.pir.bedrock.ModelParser;
 import cn.powernukkitx.pir.bedrock.resource.PIRLogger;
 import cn.powernukkitx.pir.bedrock.resource.ResourcePack;
+import cn.powernukkitx.pir.functor.TriangleFunctor;
+import cn.powernukkitx.pir.functor.TriangleFunctors;
 import cn.powernukkitx.pir.object.camera.SimpleOrthogonalCamera;
 import cn.powernukkitx.pir.object.geometry.Cube;
+import cn.powernukkitx.pir.object.geometry.Material;
 import cn.powernukkitx.pir.object.light.AmbientLight;
 import cn.powernukkitx.pir.object.light.DirectionalLight;
 import cn.powernukkitx.pir.scene.SimpleScene;
 import cn.powernukkitx.pir.util.ImageUtil;
-import cn.powernukkitx.pir.worker.SimpleRayTraceWorker;
+import cn.powernukkitx.pir.worker.DeferredRayTraceWorker;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -87,6 +91,19 @@ public class RenderCommand extends VanillaCommand {
             return 0;
         }
         var pirLogger = PIRLogger.fromCommandLogger(log);
+        // resolved for this render only, other renders keep their own functors
+        TriangleFunctor functor;
+        if (renderingManifest.triangleFunctor != null) {
+            try {
+                functor = TriangleFunctors.create(renderingManifest.triangleFunctor);
+                pirLogger.info("Using triangle functor " + renderingManifest.triangleFunctor + " (" + functor.getClass().getSimpleName() + ")");
+            } catch (IllegalArgumentException e) {
+                log.addError("Error selecting triangle functor: " + e.getMessage());
+                return 0;
+            }
+        } else {
+            functor = TriangleFunctor.current();
+        }
         if (renderingManifest.texturePackPath != null) {
             try {
                 ResourcePack.getParsedResourcePack(renderingManifest.texturePackPath, pirLogger);
@@ -180,7 +197,6 @@ public class RenderCommand extends VanillaCommand {
                     pirLogger.warn("Materials of block " + task.namespaceId + " not found");
                     continue;
                 }
-                var isSingleSide = true;
                 for (var faceEntry : materials.getTags().entrySet()) {
                     var face = faceEntry.getKey();
                     var material = (CompoundTag) faceEntry.getValue();
@@ -190,10 +206,8 @@ public class RenderCommand extends VanillaCommand {
                         pirLogger.warn("Texture of block " + namespaceId + " not found: " + textureId);
                         continue;
                     }
-                    var renderMethod = material.getString("render_method");
-                    if (isSingleSide && ("alpha_test".equals(renderMethod) || "double_sided".equals(renderMethod))) {
-                        isSingleSide = false;
-                    }
+                    // the faces keep their own materials, so only the double-sided ones are traced from behind
+                    textureManifest.materials.put(face, Material.ofRenderMethod(material.getString("render_method")));
                     switch (face) {
                         case "up" -> textureManifest.up = texturePath;
                         case "down" -> textureManifest.down = texturePath;
@@ -204,7 +218,6 @@ public class RenderCommand extends VanillaCommand {
                         case "*" -> textureManifest.any = texturePath;
                     }
                 }
-                task.isSingleSide = isSingleSide;
                 task.inPackTexturePath = textureManifest;
 
                 // Geometry
@@ -237,11 +250,15 @@ public class RenderCommand extends VanillaCommand {
                 return 0;
             }
         } else if ("image".equals(mode)) {
-            var rendered32Images = renderImage(32, 32, renderingManifest, pirLogger);
+            var rendered32Images = renderImage(32, 32, renderingManifest, functor, pirLogger);
             log.addSuccess("Rendered " + rendered32Images.size() + " 32x32 images in " + (System.currentTimeMillis() - start) + "ms").output();
             start = System.currentTimeMillis();
-            var rendered128Images = renderImage(128, 128, renderingManifest, pirLogger);
+            var rendered128Images = renderImage(128, 128, renderingManifest, functor, pirLogger);
             log.addSuccess("Rendered " + rendered128Images.size() + " 128x128 images in " + (System.currentTimeMillis() - start) + "ms").output();
+            ResourcePack.saveTextureStores(pirLogger);
+            for (var stats : ImageUtil.cacheStats()) {
+                pirLogger.info("Image cache " + stats);
+            }
             start = System.currentTimeMillis();
             // parallely write them into disk
             for (var entry : rendered128Images.entrySet()) {
@@ -274,11 +291,12 @@ public class RenderCommand extends VanillaCommand {
             log.addSuccess("Wrote " + rendered32Images.size() + " 32x32 images in " +
                     (System.currentTimeMillis() - start) + "ms").output();
         } else if ("mcmod".equals(mode)) {
-            var smallIcons = renderImage(32, 32, renderingManifest, pirLogger);
+            var smallIcons = renderImage(32, 32, renderingManifest, functor, pirLogger);
             log.addSuccess("Rendered " + smallIcons.size() + " 32x32 icons in " + (System.currentTimeMillis() - start) + "ms").output();
             start = System.currentTimeMillis();
-            var largeIcons = renderImage(128, 128, renderingManifest, pirLogger);
+            var largeIcons = renderImage(128, 128, renderingManifest, functor, pirLogger);
             log.addSuccess("Rendered " + largeIcons.size() + " 128x128 icons in " + (System.currentTimeMillis() - start) + "ms").output();
+            ResourcePack.saveTextureStores(pirLogger);
             start = System.currentTimeMillis();
             renderingManifest.renderingTaskList.values().parallelStream().forEach(task -> {
                 if (task.isIgnored) return;
@@ -343,6 +361,16 @@ public class RenderCommand extends VanillaCommand {
     public static @NotNull Map<String, RenderedImage> renderImage(int width, int height,
                                                                   @NotNull RenderingManifest manifest,
                                                                   @NotNull PIRLogger logger) {
+        return renderImage(width, height, manifest, TriangleFunctor.current(), logger);
+    }
+
+    /**
+     * @param functor the triangle functor of the blocks rendered, see {@link TriangleFunctors#create(String)}
+     */
+    public static @NotNull Map<String, RenderedImage> renderImage(int width, int height,
+                                                                  @NotNull RenderingManifest manifest,
+                                                                  @NotNull TriangleFunctor functor,
+                                                                  @NotNull PIRLogger logger) {
         var fuzzyUp = new Vector3f(0, 0, 1);
         var direction = new Vector3f(-1f, 1f, -1f / 1.27f).normalize();
         var camera = new SimpleOrthogonalCamera(new Vector3f(4.01f, -4f, 4f / 1.27f),
@@ -355,7 +383,7 @@ public class RenderCommand extends VanillaCommand {
             try {
                 var resourcePack = ResourcePack.getParsedResourcePack(task.texturePackPath, logger);
                 if (task.isItem()) {
-                    var texture = ImageIO.read(Files.newInputStream(resourcePack.getRealPath(task.inPackTexturePath.any)));
+                    var texture = resourcePack.readTexture(task.inPackTexturePath.any);
                     var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
                     var graphics = image.createGraphics();
                     graphics.drawImage(texture, 0, 0, width, height, null);
@@ -363,7 +391,8 @@ public class RenderCommand extends VanillaCommand {
                     return new AbstractMap.SimpleImmutableEntry<>(task.namespaceId, image);
                 } else {
                     var scene = new SimpleScene();
-                    var rayTraceWorker = new SimpleRayTraceWorker(task.isSingleSide);
+                    // blocks sharing a geometry are traced once and only retextured afterwards
+                    var rayTraceWorker = new DeferredRayTraceWorker(task.isSingleSide, functor);
                     // handle scene
                     {
                         scene.add(new AmbientLight(task.ambientLight));
@@ -373,23 +402,36 @@ public class RenderCommand extends VanillaCommand {
                     if ("unit_cube".equals(task.inPackModelPath)) {
                         // down, north, east, south, west, up
                         scene.add(new Cube(0, 0, 0, 1, new BufferedImage[]{
-                                ImageUtil.readImage(resourcePack.getRealPath(task.inPackTexturePath.down())),
-                                ImageUtil.readImage(resourcePack.getRealPath(task.inPackTexturePath.north())),
-                                ImageUtil.readImage(resourcePack.getRealPath(task.inPackTexturePath.west())),
-                                ImageUtil.readImage(resourcePack.getRealPath(task.inPackTexturePath.south())),
-                                ImageUtil.readImage(resourcePack.getRealPath(task.inPackTexturePath.east())),
-                                ImageUtil.readImage(resourcePack.getRealPath(task.inPackTexturePath.up()))
+                                resourcePack.readTexture(task.inPackTexturePath.down()),
+                                resourcePack.readTexture(task.inPackTexturePath.north()),
+                                resourcePack.readTexture(task.inPackTexturePath.west()),
+                                resourcePack.readTexture(task.inPackTexturePath.south()),
+                                resourcePack.readTexture(task.inPackTexturePath.east()),
+                                resourcePack.readTexture(task.inPackTexturePath.up())
+                        }, new Material[]{
+                                task.inPackTexturePath.material("down"),
+                                task.inPackTexturePath.material("north"),
+                                task.inPackTexturePath.material("west"),
+                                task.inPackTexturePath.material("south"),
+                                task.inPackTexturePath.material("east"),
+                                task.inPackTexturePath.material("up")
                         }));
                     } else {
                         var modelText = Files.readString(resourcePack.getRealPath(task.inPackModelPath));
                         var model = ModelParser.parse(modelText);
-                        var modelTexture = ImageUtil.readImage(resourcePack.getRealPath(task.inPackTexturePath.any));
+                        var modelTexture = resourcePack.readTexture(task.inPackTexturePath.any);
+                        // each face keeps the material of its entry in material_instances, * for the others
+                        var materials = new Material[JsonModelUVSet.FACE_NAMES.length];
+                        for (int i = 0; i < materials.length; i++) {
+                            materials[i] = task.inPackTexturePath.material(JsonModelUVSet.FACE_NAMES[i]);
+                        }
                         for (var each : model) {
-                            each.applyToScene(scene, modelTexture);
+                            each.applyToScene(scene, modelTexture, materials);
                         }
                     }
                     // render
-                    var image = camera.render(scene.freeze(), rayTraceWorker);
+                    // the camera is fixed, so the faces it cannot see are dropped before tracing
+                    var image = camera.render(scene.freeze(camera, task.isSingleSide), rayTraceWorker);
                     return new AbstractMap.SimpleEntry<>(task.namespaceId, image);
                 }
             } catch (Exception e) {
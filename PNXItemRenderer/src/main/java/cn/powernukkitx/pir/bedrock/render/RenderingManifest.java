@@ -9,6 +9,10 @@ import java.util.Map;
 public final class RenderingManifest {
     public String texturePackPath;
     public String outputPathDir;
+    /**
+     * The name of the triangle functor provider to use, null to keep the current one
+     */
+    public String triangleFunctor;
     public Map<String, TaskManifest> renderingTaskList = new HashMap<>();
 
     public static @NotNull RenderingManifest fromJson(@NotNull JsonObject json) {
@@ -19,6 +23,9 @@ public final class RenderingManifest {
         if (json.has("outputPathDir")) {
             manifest.outputPathDir = json.get("outputPathDir").getAsString();
         }
+        if (json.has("triangleFunctor")) {
+            manifest.triangleFunctor = json.get("triangleFunctor").getAsString();
+        }
         if (json.has("renderingTaskList")) {
             var obj = json.get("renderingTaskList").getAsJsonObject();
             for (var entry : obj.entrySet()) {
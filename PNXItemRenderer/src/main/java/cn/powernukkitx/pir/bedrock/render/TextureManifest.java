@@ -1,8 +1,12 @@
 package cn.powernukkitx.pir.bedrock.render;
 
 import cn.powernukkitx.pir.PNXPluginMain;
+import cn.powernukkitx.pir.object.geometry.Material;
 import com.google.gson.JsonElement;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public final class TextureManifest {
     public String up;
     public String down;
@@ -11,6 +15,10 @@ public final class TextureManifest {
     public String north;
     public String south;
     public String any;
+    /**
+     * face name (up, down, east, west, north, south or *) -> the material of the face
+     */
+    public final Map<String, Material> materials = new HashMap<>();
 
     public String up() {
         return up == null ? any : up;
@@ -40,6 +48,18 @@ public final class TextureManifest {
         return any;
     }
 
+    /**
+     * @param face up, down, east, west, north, south or *
+     * @return the material of the face, the one of * if the face has none, opaque if neither has
+     */
+    public Material material(String face) {
+        var material = materials.get(face);
+        if (material == null) {
+            material = materials.get("*");
+        }
+        return material == null ? Material.OPAQUE : material;
+    }
+
     public static TextureManifest fromJson(JsonElement json) {
         if (json.isJsonPrimitive()) {
             var manifest = new TextureManifest();
@@ -1,12 +1,15 @@
 package cn.powernukkitx.pir.bedrock.resource;
 
 import cn.powernukkitx.pir.PNXPluginMain;
+import cn.powernukkitx.pir.util.ImageUtil;
+import cn.powernukkitx.pir.util.TextureStore;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import org.jetbrains.annotations.NotNull;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.FileSystem;
@@ -25,6 +28,7 @@ public class ResourcePack {
     private final Map<String, String> id2geometryMap = new HashMap<>();
     private final Map<String, Map<String, String>> languageMap = new HashMap<>(2);
     private static final ConcurrentHashMap<String, ResourcePack> PARSED_RESOURCE_PACKS = new ConcurrentHashMap<>(2);
+    private volatile TextureStore textureStore;
 
     public static ResourcePack getParsedResourcePack(@NotNull String path, @NotNull PIRLogger logger) throws IOException {
         if (PARSED_RESOURCE_PACKS.containsKey(path)) {
@@ -165,6 +169,40 @@ public class ResourcePack {
         return getRealPath(id2textureMap.get(id));
     }
 
+    /**
+     * Read a texture of the pack, decoded textures are kept in a {@link TextureStore} file next to the pack,
+     * so they are not decoded again in the next runs until the pack changes.
+     */
+    public BufferedImage readTexture(String inPackPath) throws IOException {
+        return ImageUtil.readImage(getRealPath(inPackPath), getTextureStore());
+    }
+
+    private TextureStore getTextureStore() throws IOException {
+        if (textureStore == null) {
+            synchronized (this) {
+                if (textureStore == null) {
+                    textureStore = TextureStore.open(path.resolveSibling(path.getFileName() + ".textures"), TextureStore.checksum(path));
+                }
+            }
+        }
+        return textureStore;
+    }
+
+    /**
+     * Write the textures decoded in this run into the texture stores of all the parsed packs.
+     */
+    public static void saveTextureStores(@NotNull PIRLogger logger) {
+        for (var resourcePack : PARSED_RESOURCE_PACKS.values()) {
+            if (resourcePack.textureStore != null) {
+                try {
+                    resourcePack.textureStore.save();
+                } catch (IOException e) {
+                    logger.warn("Failed to save the texture store of " + resourcePack.path + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
     public String getLanguageText(String languageCode, String key) {
         return languageMap.getOrDefault(languageCode, Collections.emptyMap()).getOrDefault(key, key);
     }